@@ -1,5 +1,6 @@
 package ru.practicum.dto.requests;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -17,4 +18,10 @@ public class ParticipationRequestDto {
     Long id;
     Long requester;
     RequestStatus status;
+    /**
+     * Место в очереди ожидания, если на событии без модерации не осталось мест.
+     * Заполняется, только пока включена очередь допуска заявок на популярные события.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Integer waitlistPosition;
 }
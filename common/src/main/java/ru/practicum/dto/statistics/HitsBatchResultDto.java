@@ -0,0 +1,18 @@
+package ru.practicum.dto.statistics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class HitsBatchResultDto {
+    private long accepted;
+    private long rejected;
+
+    public void add(HitsBatchResultDto other) {
+        accepted += other.getAccepted();
+        rejected += other.getRejected();
+    }
+}
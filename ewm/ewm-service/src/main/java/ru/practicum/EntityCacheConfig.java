@@ -0,0 +1,71 @@
+package ru.practicum;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.practicum.category.Category;
+import ru.practicum.user.User;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Кэш второго уровня Hibernate для справочных сущностей на Caffeine.
+ * Каждый регион ограничен по размеру и времени жизни записи (ewm.cache.&lt;регион&gt;.size и ttl),
+ * Hibernate обновляет и удаляет записи при изменении и удалении сущностей, а массовые запросы
+ * сбрасывают регион целиком. Регионы, не описанные здесь, не создаются: Hibernate завершится ошибкой
+ * при старте, чтобы в кэш не попала сущность без ограничений.
+ * Попадания и промахи каждого региона публикуются метриками cache.gets{cache=&lt;регион&gt;}.
+ */
+@Configuration
+public class EntityCacheConfig {
+    /**
+     * Провайдер хранит менеджеры кэшей по URI для всей JVM. URI уникален для каждого контекста, поэтому
+     * регионы создаются с настройками этого контекста, а закрытие контекста не закрывает кэши других.
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager entityCacheManager(MeterRegistry meterRegistry,
+                                           @Value("${ewm.cache.category.ttl:PT1H}") Duration categoryTtl,
+                                           @Value("${ewm.cache.category.size:1000}") long categorySize,
+                                           @Value("${ewm.cache.user.ttl:PT10M}") Duration userTtl,
+                                           @Value("${ewm.cache.user.size:10000}") long userSize) {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(URI.create("ewm-entity-cache-" + UUID.randomUUID()),
+                getClass().getClassLoader());
+        createRegion(cacheManager, meterRegistry, Category.CACHE_REGION, categoryTtl, categorySize);
+        createRegion(cacheManager, meterRegistry, User.CACHE_REGION, userTtl, userSize);
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer entityCacheCustomizer(CacheManager entityCacheManager) {
+        return properties -> {
+            properties.put(ConfigSettings.CACHE_MANAGER, entityCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+
+    private static void createRegion(CacheManager cacheManager, MeterRegistry meterRegistry,
+                                     String region, Duration ttl, long size) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        configuration.setMaximumSize(OptionalLong.of(size));
+        // Hibernate хранит в регионе неизменяемые разобранные записи, копировать их при чтении незачем
+        configuration.setStoreByValue(false);
+        configuration.setStatisticsEnabled(true);
+        Cache<Object, Object> cache = cacheManager.createCache(region, configuration);
+        JCacheMetrics.monitor(meterRegistry, cache);
+    }
+}
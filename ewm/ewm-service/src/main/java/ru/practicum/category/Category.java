@@ -2,7 +2,10 @@ package ru.practicum.category;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
@@ -10,10 +13,17 @@ import javax.persistence.Id;
 import javax.persistence.Table;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Category.CACHE_REGION)
 @Data
 @NoArgsConstructor
 @Table(name = "category")
 public class Category {
+    /**
+     * Регион кэша второго уровня, размер и время жизни задаются в EntityCacheConfig.
+     */
+    public static final String CACHE_REGION = "category";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     Long id;
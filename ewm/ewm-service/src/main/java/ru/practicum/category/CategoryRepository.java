@@ -1,9 +1,12 @@
 package ru.practicum.category;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface CategoryRepository extends JpaRepository<Category, Long> {
 
+    Slice<Category> findAllBy(Pageable pageable);
 }
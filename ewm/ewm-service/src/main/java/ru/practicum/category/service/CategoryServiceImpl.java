@@ -49,13 +49,12 @@ public class CategoryServiceImpl implements CategoryService {
     @Override
     @Transactional
     public void delete(Long categoryId) {
-        if (!categoryRepository.existsById(categoryId))
-            throw new NotFoundException("Category with id=" + categoryId + " was not found");
+        Category category = getEntityById(categoryId);
 
         if (eventRepository.existsByCategoryId(categoryId))
             throw new ConditionNotMetException("Category with id=" + categoryId + " is in use");
 
-        categoryRepository.deleteById(categoryId);
+        categoryRepository.delete(category);
     }
 
     @Override
@@ -73,7 +72,7 @@ public class CategoryServiceImpl implements CategoryService {
     @Override
     public List<CategoryDto> getAll(int offset, int limit) {
         PageRequest pageRequest = PageRequest.of(offset / limit, limit);
-        return categoryRepository.findAll(pageRequest).getContent().stream()
+        return categoryRepository.findAllBy(pageRequest).getContent().stream()
                 .map(categoryMapper::toDto)
                 .collect(Collectors.toList());
     }
@@ -1,12 +1,14 @@
 package ru.practicum.compilation;
 
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 
 @Repository
 public interface CompilationRepository extends JpaRepository<Compilation, Long> {
-    Page<Compilation> findByPinned(Boolean pinned, Pageable pageable);
+    Slice<Compilation> findByPinned(Boolean pinned, Pageable pageable);
+
+    Slice<Compilation> findAllBy(Pageable pageable);
 }
@@ -1,8 +1,8 @@
 package ru.practicum.compilation.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import ru.practicum.compilation.Compilation;
 import ru.practicum.compilation.CompilationMapper;
@@ -95,12 +95,12 @@ public class CompilationServiceImpl implements CompilationService {
     @Override
     public List<CompilationDto> getAll(Optional<Boolean> pinned, int offset, int limit) {
         PageRequest pageRequest = PageRequest.of(offset / limit, limit);
-        Page<Compilation> compilations;
+        Slice<Compilation> compilations;
 
         if (pinned.isPresent()) {
             compilations = compilationRepository.findByPinned(pinned.get(), pageRequest);
         } else {
-            compilations = compilationRepository.findAll(pageRequest);
+            compilations = compilationRepository.findAllBy(pageRequest);
         }
 
         return compilations.getContent().stream()
@@ -0,0 +1,25 @@
+package ru.practicum.dialect;
+
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Диалект H2 для тестов. Полнотекстового поиска в H2 нет, поэтому функции поиска
+ * заменены поиском подстроки без учёта регистра, а релевантность — тем, в каком поле найдена подстрока.
+ * Строка запроса передаётся параметром, поэтому в каждом шаблоне она встречается ровно один раз.
+ */
+public class EwmH2Dialect extends H2Dialect {
+    private static final String PATTERN = "concat('%', lower(?4), '%')";
+
+    public EwmH2Dialect() {
+        super();
+        registerFunction(TextSearchFunctions.MATCH, new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN,
+                "(lower(concat_ws(' ', ?1, ?2, ?3)) like " + PATTERN + ")"));
+        registerFunction(TextSearchFunctions.RANK, new SQLFunctionTemplate(StandardBasicTypes.DOUBLE,
+                "(select case when lower(?1) like q.pattern then 3.0" +
+                        " when lower(?2) like q.pattern then 2.0" +
+                        " when lower(?3) like q.pattern then 1.0 else 0.0 end" +
+                        " from (values (" + PATTERN + ")) q(pattern))"));
+    }
+}
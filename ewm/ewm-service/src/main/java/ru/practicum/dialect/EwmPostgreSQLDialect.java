@@ -0,0 +1,26 @@
+package ru.practicum.dialect;
+
+import org.hibernate.dialect.PostgreSQL10Dialect;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Диалект PostgreSQL с полнотекстовым поиском по событиям.
+ * Выражение tsvector совпадает с выражением GIN-индекса ix_event_text_search из schema-postgresql.sql,
+ * поэтому поиск идёт по индексу, а индекс обновляется самой базой при вставке и изменении события.
+ * Заголовок весит больше аннотации, аннотация — больше описания.
+ */
+public class EwmPostgreSQLDialect extends PostgreSQL10Dialect {
+    private static final String VECTOR = "(setweight(to_tsvector('simple', coalesce(?1, '')), 'A')" +
+            " || setweight(to_tsvector('simple', coalesce(?2, '')), 'B')" +
+            " || setweight(to_tsvector('simple', coalesce(?3, '')), 'C'))";
+    private static final String QUERY = "plainto_tsquery('simple', ?4)";
+
+    public EwmPostgreSQLDialect() {
+        super();
+        registerFunction(TextSearchFunctions.MATCH,
+                new SQLFunctionTemplate(StandardBasicTypes.BOOLEAN, "(" + VECTOR + " @@ " + QUERY + ")"));
+        registerFunction(TextSearchFunctions.RANK,
+                new SQLFunctionTemplate(StandardBasicTypes.DOUBLE, "ts_rank(" + VECTOR + ", " + QUERY + ")"));
+    }
+}
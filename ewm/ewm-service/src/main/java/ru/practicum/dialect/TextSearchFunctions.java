@@ -0,0 +1,19 @@
+package ru.practicum.dialect;
+
+/**
+ * Функции полнотекстового поиска, которые регистрируют диалекты приложения.
+ * Обе принимают заголовок, аннотацию, описание и строку запроса.
+ */
+public final class TextSearchFunctions {
+    /**
+     * Логическое выражение: текст события соответствует запросу.
+     */
+    public static final String MATCH = "ewm_text_match";
+    /**
+     * Числовая релевантность текста события запросу, чем больше, тем выше.
+     */
+    public static final String RANK = "ewm_text_rank";
+
+    private TextSearchFunctions() {
+    }
+}
@@ -0,0 +1,14 @@
+package ru.practicum.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Событие приложения: счётчик подтверждённых заявок события изменён в текущей транзакции на delta.
+ */
+@Getter
+@AllArgsConstructor
+public class ConfirmedRequestsChangedEvent {
+    private final Long eventId;
+    private final long delta;
+}
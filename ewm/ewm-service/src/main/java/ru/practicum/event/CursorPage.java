@@ -0,0 +1,21 @@
+package ru.practicum.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Страница выдачи с позицией продолжения; nextCursor равен null, если страница последняя.
+ */
+@Data
+@AllArgsConstructor
+public class CursorPage<T> {
+    /**
+     * Заголовок ответа, в котором передаётся позиция продолжения.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private List<T> content;
+    private String nextCursor;
+}
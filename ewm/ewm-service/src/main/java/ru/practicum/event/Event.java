@@ -7,33 +7,51 @@ import ru.practicum.category.Category;
 import ru.practicum.dto.event.EventState;
 import ru.practicum.user.User;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
 import javax.persistence.Table;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "event")
+@NamedEntityGraph(name = Event.WITH_CATEGORY_AND_INITIATOR, attributeNodes = {
+        @NamedAttributeNode("category"),
+        @NamedAttributeNode("initiator")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class Event {
+    /**
+     * Граф для загрузки категории и инициатора тем же запросом, что и само событие.
+     */
+    public static final String WITH_CATEGORY_AND_INITIATOR = "Event.withCategoryAndInitiator";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     private String annotation;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "category_id")
     private Category category;
 
+    /**
+     * Счётчик подтверждённых заявок. Меняется только запросами EventRepository в транзакциях,
+     * меняющих статусы заявок, чтобы сохранение события не перезаписало его прочитанным ранее значением.
+     */
+    @Column(updatable = false)
     private Long confirmedRequests;
 
     private LocalDateTime createdOn;
@@ -42,7 +60,7 @@ public class Event {
 
     private LocalDateTime eventDate;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "initiator_id")
     private User initiator;
 
@@ -63,5 +81,10 @@ public class Event {
 
     private String title;
 
+    /**
+     * Просмотры из сервиса статистики для сортировки по просмотрам. Меняется только EventViewsSynchronizer,
+     * чтобы сохранение события не перезаписало его прочитанным ранее значением.
+     */
+    @Column(updatable = false)
     private Long views;
 }
\ No newline at end of file
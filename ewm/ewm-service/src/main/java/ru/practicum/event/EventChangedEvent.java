@@ -0,0 +1,17 @@
+package ru.practicum.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Событие приложения: событие изменено в текущей транзакции.
+ */
+@Getter
+@AllArgsConstructor
+public class EventChangedEvent {
+    private final Event event;
+    /**
+     * Категория события до изменения: события, перенесённые в другую категорию, пропадают из выдачи по старой.
+     */
+    private final Long previousCategoryId;
+}
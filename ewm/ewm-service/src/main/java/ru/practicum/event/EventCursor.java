@@ -0,0 +1,93 @@
+package ru.practicum.event;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.domain.Sort;
+import ru.practicum.dto.event.EventSortOption;
+
+import javax.validation.ValidationException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Позиция продолжения выдачи событий: значение ключа сортировки и id последнего события страницы.
+ * Клиенту передаётся непрозрачной строкой. Следующая страница выбирается условием по ключу
+ * (eventDate, id) или (views, id), а не смещением, поэтому стоимость запроса не зависит от глубины страницы.
+ * Дата события меняется редко, а просмотры обновляются в фоне, поэтому порядок по просмотрам не стабилен:
+ * событие, просмотры которого изменились между запросами страниц, может быть пропущено или показано дважды.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public class EventCursor {
+    private static final String SEPARATOR = "|";
+
+    private final EventSortOption sort;
+    private final LocalDateTime eventDate;
+    private final Long views;
+    private final Long id;
+
+    private EventCursor(EventSortOption sort, LocalDateTime eventDate, Long views, Long id) {
+        this.sort = sort;
+        this.eventDate = eventDate;
+        this.views = views;
+        this.id = id;
+    }
+
+    public static EventCursor afterEventDate(LocalDateTime eventDate, Long id) {
+        return new EventCursor(EventSortOption.EVENT_DATE, eventDate, null, id);
+    }
+
+    public static EventCursor afterViews(Long views, Long id) {
+        return new EventCursor(EventSortOption.VIEWS, null, views == null ? 0L : views, id);
+    }
+
+    /**
+     * Порядок выдачи, согласованный с условием продолжения: по дате события по возрастанию
+     * или по просмотрам по убыванию, при равенстве ключа — по id.
+     */
+    public static Sort sortOf(EventSortOption sort) {
+        if (sort == EventSortOption.VIEWS) {
+            return Sort.by(Sort.Order.desc("views"), Sort.Order.asc("id"));
+        }
+        return Sort.by(Sort.Order.asc("eventDate"), Sort.Order.asc("id"));
+    }
+
+    public String encode() {
+        String key = sort == EventSortOption.VIEWS ? String.valueOf(views) : eventDate.toString();
+        String value = sort.name() + SEPARATOR + key + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Разбирает строку, выданную {@link #encode()}.
+     *
+     * @throws ValidationException если строка повреждена или выдана для другого порядка сортировки
+     */
+    public static EventCursor decode(String token, EventSortOption sort) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                    .split("\\" + SEPARATOR, -1);
+            if (parts.length != 3) {
+                throw new ValidationException("Invalid cursor: " + token);
+            }
+            EventCursor cursor;
+            if (EventSortOption.VIEWS.name().equals(parts[0])) {
+                cursor = afterViews(Long.valueOf(parts[1]), Long.valueOf(parts[2]));
+            } else if (EventSortOption.EVENT_DATE.name().equals(parts[0])) {
+                cursor = afterEventDate(LocalDateTime.parse(parts[1]), Long.valueOf(parts[2]));
+            } else {
+                throw new ValidationException("Invalid cursor: " + token);
+            }
+            if (cursor.getSort() != sort) {
+                throw new ValidationException("Cursor was issued for sort " + cursor.getSort() + ", not " + sort);
+            }
+            return cursor;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new ValidationException("Invalid cursor: " + token);
+        }
+    }
+}
@@ -33,6 +33,12 @@ public interface EventMapper {
 
     EventShortDto toShortDto(Event event);
 
+    @Mapping(source = "categoryId", target = "category.id")
+    @Mapping(source = "categoryName", target = "category.name")
+    @Mapping(source = "initiatorId", target = "initiator.id")
+    @Mapping(source = "initiatorName", target = "initiator.name")
+    EventShortDto toShortDto(EventShortView view);
+
     default void updateEventFromAdminRequest(AdminUpdateEventRequest updateRequest, @MappingTarget Event event) {
         updateEventBasicFields(event, updateRequest);
 
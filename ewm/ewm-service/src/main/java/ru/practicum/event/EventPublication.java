@@ -0,0 +1,12 @@
+package ru.practicum.event;
+
+import java.time.LocalDateTime;
+
+/**
+ * Идентификатор и дата публикации события, без загрузки сущности.
+ */
+public interface EventPublication {
+    Long getId();
+
+    LocalDateTime getPublishedOn();
+}
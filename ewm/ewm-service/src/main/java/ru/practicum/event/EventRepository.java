@@ -1,16 +1,76 @@
 package ru.practicum.event;
 
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import ru.practicum.dto.event.EventState;
+import ru.practicum.dto.requests.RequestStatus;
 
+import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface EventRepository extends JpaRepository<Event, Long>, JpaSpecificationExecutor<Event> {
+public interface EventRepository extends JpaRepository<Event, Long>, JpaSpecificationExecutor<Event>,
+        EventRepositoryCustom {
 
-    List<Event> findByInitiatorId(Long userId, Pageable pageable);
+    @Override
+    @EntityGraph(Event.WITH_CATEGORY_AND_INITIATOR)
+    Optional<Event> findById(Long eventId);
+
+    @EntityGraph(Event.WITH_CATEGORY_AND_INITIATOR)
+    List<Event> findByStateAndEventDateAfter(EventState state, LocalDateTime eventDate);
 
     boolean existsByCategoryId(Long categoryId);
+
+    List<EventPublication> findByStateAndIdIn(EventState state, Collection<Long> ids);
+
+    List<EventPublication> findByStateAndIdGreaterThanOrderById(EventState state, Long id, Pageable pageable);
+
+    /**
+     * Занимает место на событии одним условным UPDATE: счётчик увеличивается, только если он меньше лимита.
+     * Строка события блокируется до конца транзакции, поэтому параллельные заявки не превысят лимит.
+     *
+     * @return 1, если место занято, 0, если свободных мест нет
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Event e SET e.confirmedRequests = COALESCE(e.confirmedRequests, 0) + 1 " +
+            "WHERE e.id = :eventId AND COALESCE(e.confirmedRequests, 0) < e.participantLimit")
+    int reserveSeat(@Param("eventId") Long eventId);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Event e SET e.confirmedRequests = COALESCE(e.confirmedRequests, 0) + :delta WHERE e.id = :eventId")
+    int addConfirmedRequests(@Param("eventId") Long eventId, @Param("delta") long delta);
+
+    /**
+     * Записывает правильное значение счётчика подтверждённых заявок.
+     *
+     * @return 1, если счётчик отличался от confirmed
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Event e SET e.confirmedRequests = :confirmed " +
+            "WHERE e.id = :eventId AND (e.confirmedRequests IS NULL OR e.confirmedRequests <> :confirmed)")
+    int fixConfirmedRequests(@Param("eventId") Long eventId, @Param("confirmed") long confirmed);
+
+    /**
+     * События, у которых счётчик подтверждённых заявок расходится с числом заявок в статусе status.
+     */
+    @Query("SELECT e.id FROM Event e WHERE COALESCE(e.confirmedRequests, 0) <> " +
+            "(SELECT COUNT(r) FROM ParticipationRequest r WHERE r.event = e AND r.status = :status)")
+    List<Long> findIdsWithConfirmedRequestsDrift(@Param("status") RequestStatus status);
+
+    /**
+     * Событие с блокировкой строки до конца транзакции.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM Event e WHERE e.id = :eventId")
+    Optional<Event> findByIdForUpdate(@Param("eventId") Long eventId);
 }
@@ -0,0 +1,32 @@
+package ru.practicum.event;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Map;
+
+public interface EventRepositoryCustom {
+
+    /**
+     * Краткие представления событий, подходящих под спецификацию, без загрузки сущностей.
+     * Категория и инициатор присоединяются в том же запросе.
+     */
+    Slice<EventShortView> findShortViews(Specification<Event> spec, Pageable pageable);
+
+    /**
+     * События, подходящие под спецификацию, вместе с категорией и инициатором.
+     * В отличие от findAll(spec, pageable) не выполняет запрос количества: наличие следующей страницы
+     * определяется по одной лишней строке.
+     */
+    Slice<Event> findSlice(Specification<Event> spec, Pageable pageable);
+
+    /**
+     * Записывает просмотры событий одним пакетом JDBC. Строки, в которых значение не изменилось, не обновляются.
+     *
+     * @param views просмотры по идентификатору события
+     * @return идентификаторы событий, у которых значение изменилось
+     */
+    List<Long> updateViews(Map<Long, Long> views);
+}
@@ -0,0 +1,123 @@
+package ru.practicum.event;
+
+import org.hibernate.Session;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import ru.practicum.category.Category;
+import ru.practicum.user.User;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class EventRepositoryCustomImpl implements EventRepositoryCustom {
+    private static final String FETCH_GRAPH = "javax.persistence.fetchgraph";
+    private static final String UPDATE_VIEWS =
+            "UPDATE event SET views = ? WHERE id = ? AND (views IS NULL OR views <> ?)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Slice<EventShortView> findShortViews(Specification<Event> spec, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<EventShortView> query = cb.createQuery(EventShortView.class);
+        Root<Event> root = query.from(Event.class);
+        Join<Event, Category> category = root.join("category", JoinType.LEFT);
+        Join<Event, User> initiator = root.join("initiator", JoinType.LEFT);
+
+        query.select(cb.construct(EventShortView.class,
+                root.get("id"),
+                root.get("annotation"),
+                category.get("id"),
+                category.get("name"),
+                root.get("confirmedRequests"),
+                root.get("eventDate"),
+                initiator.get("id"),
+                initiator.get("name"),
+                root.get("paid"),
+                root.get("publishedOn"),
+                root.get("title"),
+                root.get("views")));
+        applySpecification(spec, pageable, root, query, cb);
+
+        return toSlice(entityManager.createQuery(query), pageable);
+    }
+
+    @Override
+    public Slice<Event> findSlice(Specification<Event> spec, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Event> query = cb.createQuery(Event.class);
+        Root<Event> root = query.from(Event.class);
+        query.select(root);
+        applySpecification(spec, pageable, root, query, cb);
+
+        TypedQuery<Event> typedQuery = entityManager.createQuery(query);
+        typedQuery.setHint(FETCH_GRAPH, entityManager.getEntityGraph(Event.WITH_CATEGORY_AND_INITIATOR));
+        return toSlice(typedQuery, pageable);
+    }
+
+    @Override
+    public List<Long> updateViews(Map<Long, Long> views) {
+        List<Long> changed = new ArrayList<>();
+        if (views.isEmpty()) {
+            return changed;
+        }
+        List<Long> ids = new ArrayList<>(views.keySet());
+        entityManager.flush();
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_VIEWS)) {
+                for (Long id : ids) {
+                    statement.setLong(1, views.get(id));
+                    statement.setLong(2, id);
+                    statement.setLong(3, views.get(id));
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                for (int i = 0; i < counts.length; i++) {
+                    // Драйвер может не сообщить число строк, тогда событие считается изменённым
+                    if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                        changed.add(ids.get(i));
+                    }
+                }
+            }
+        });
+        return changed;
+    }
+
+    private void applySpecification(Specification<Event> spec, Pageable pageable, Root<Event> root,
+                                    CriteriaQuery<?> query, CriteriaBuilder cb) {
+        Predicate predicate = spec == null ? null : spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+        }
+    }
+
+    private <T> Slice<T> toSlice(TypedQuery<T> query, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(query.getResultList(), pageable, false);
+        }
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize() + 1);
+        List<T> content = query.getResultList();
+        boolean hasNext = content.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+    }
+}
@@ -0,0 +1,27 @@
+package ru.practicum.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Столбцы события, нужные для краткого представления, без описания и остальных полей полной карточки.
+ * Заполняется конструктором прямо в запросе, см. {@link EventRepositoryCustom#findShortViews}.
+ */
+@Data
+@AllArgsConstructor
+public class EventShortView {
+    private Long id;
+    private String annotation;
+    private Long categoryId;
+    private String categoryName;
+    private Long confirmedRequests;
+    private LocalDateTime eventDate;
+    private Long initiatorId;
+    private String initiatorName;
+    private Boolean paid;
+    private LocalDateTime publishedOn;
+    private String title;
+    private Long views;
+}
@@ -1,9 +1,13 @@
 package ru.practicum.event;
 
 import org.springframework.data.jpa.domain.Specification;
+import ru.practicum.dialect.TextSearchFunctions;
+import ru.practicum.dto.event.EventSortOption;
 import ru.practicum.dto.event.EventState;
 
+import javax.persistence.criteria.Expression;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public class EventSpecifications {
@@ -22,6 +26,27 @@ public class EventSpecifications {
         };
     }
 
+    /**
+     * Полнотекстовый поиск по заголовку, аннотации и описанию через функции диалекта {@link TextSearchFunctions}.
+     * Если ranked, выдача упорядочивается по релевантности; порядок из Pageable, если он задан, имеет приоритет.
+     */
+    public static Specification<Event> matchesText(String text, boolean ranked) {
+        return (root, query, cb) -> {
+            if (text == null || text.isBlank()) {
+                return cb.conjunction();
+            }
+            Expression<?>[] arguments = {root.get("title"), root.get("annotation"), root.get("description"), cb.literal(text)};
+            if (ranked) {
+                query.orderBy(cb.desc(cb.function(TextSearchFunctions.RANK, Double.class, arguments)), cb.asc(root.get("id")));
+            }
+            return cb.isTrue(cb.function(TextSearchFunctions.MATCH, Boolean.class, arguments));
+        };
+    }
+
+    public static Specification<Event> hasIds(Collection<Long> ids) {
+        return (root, query, cb) -> root.get("id").in(ids);
+    }
+
     public static Specification<Event> hasCategories(List<Long> categories) {
         return (root, query, cb) -> {
             if (categories == null || categories.isEmpty()) {
@@ -63,6 +88,7 @@ public class EventSpecifications {
             if (Boolean.TRUE.equals(onlyAvailable)) {
                 return cb.or(
                         cb.isNull(root.get("participantLimit")),
+                        cb.equal(root.get("participantLimit"), 0),
                         cb.greaterThan(root.get("participantLimit"), root.get("confirmedRequests"))
                 );
             }
@@ -87,4 +113,31 @@ public class EventSpecifications {
             return root.get("state").in(states);
         };
     }
-}
\ No newline at end of file
+
+    /**
+     * События, следующие за позицией продолжения в порядке {@link EventCursor#sortOf(EventSortOption)}.
+     */
+    public static Specification<Event> isAfter(EventCursor cursor) {
+        return (root, query, cb) -> {
+            if (cursor == null) {
+                return cb.conjunction();
+            }
+            if (cursor.getSort() == EventSortOption.VIEWS) {
+                return cb.or(
+                        cb.lessThan(root.get("views"), cursor.getViews()),
+                        cb.and(
+                                cb.equal(root.get("views"), cursor.getViews()),
+                                cb.greaterThan(root.get("id"), cursor.getId())
+                        )
+                );
+            }
+            return cb.or(
+                    cb.greaterThan(root.get("eventDate"), cursor.getEventDate()),
+                    cb.and(
+                            cb.equal(root.get("eventDate"), cursor.getEventDate()),
+                            cb.greaterThan(root.get("id"), cursor.getId())
+                    )
+            );
+        };
+    }
+}
@@ -0,0 +1,15 @@
+package ru.practicum.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Событие приложения: просмотры событий записаны в базу в текущей транзакции.
+ */
+@Getter
+@AllArgsConstructor
+public class EventViewsChangedEvent {
+    private final Map<Long, Long> views;
+}
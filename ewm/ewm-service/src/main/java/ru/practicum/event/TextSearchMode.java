@@ -0,0 +1,20 @@
+package ru.practicum.event;
+
+/**
+ * Способ поиска событий по тексту, свойство ewm.search.text-mode.
+ */
+public enum TextSearchMode {
+    /**
+     * Поиск подстроки LIKE по заголовку, аннотации и описанию без индекса, режим по умолчанию.
+     */
+    LIKE,
+    /**
+     * Полнотекстовый поиск по индексу, порядок выдачи задаётся параметром sort.
+     * Находит события по целым словам запроса, а не по подстроке, как {@link #LIKE}.
+     */
+    FULLTEXT,
+    /**
+     * Полнотекстовый поиск по индексу; если параметр sort не задан, выдача упорядочена по релевантности.
+     */
+    RANKED
+}
@@ -2,6 +2,7 @@ package ru.practicum.event.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
@@ -15,6 +16,7 @@ import org.springframework.web.bind.annotation.RestController;
 import ru.practicum.dto.event.EventDto;
 import ru.practicum.dto.event.EventState;
 import ru.practicum.dto.event.admin.AdminUpdateEventRequest;
+import ru.practicum.event.CursorPage;
 import ru.practicum.event.service.EventService;
 
 import javax.validation.Valid;
@@ -46,6 +48,8 @@ public class AdminEventController {
      * @param rangeStart дата и время не раньше которых должно произойти событие
      * @param rangeEnd   дата и время не позже которых должно произойти событие
      * @param from       количество событий, которые нужно пропустить для формирования текущего набора
+     * @param cursor     позиция продолжения из заголовка X-Next-Cursor предыдущей страницы, пустая строка для первой страницы;
+     *                   если передана, события упорядочены по дате события и параметр from не используется
      * @param size       количество событий в наборе
      * @return {@link ResponseEntity} содержащий список {@link EventDto} и статус ответа {@link HttpStatus#OK}
      */
@@ -57,12 +61,23 @@ public class AdminEventController {
             @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime rangeStart,
             @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime rangeEnd,
             @RequestParam(value = "from", defaultValue = "0") @Min(0) int from,
+            @RequestParam(required = false) String cursor,
             @RequestParam(value = "size", defaultValue = "10") @Min(1) int size) {
         if (rangeStart != null && rangeEnd != null && rangeEnd.isBefore(rangeStart)) {
             throw new ValidationException("Invalid input: 'end' date is before 'start' date");
         }
-        log.debug("Endpoint GET /admin/events has been reached with users: {}, states: {}, categories: {}, rangeStart: {}, rangeEnd: {}, from: {}, size: {}",
-                users, states, categories, rangeStart, rangeEnd, from, size);
+        log.debug("Endpoint GET /admin/events has been reached with users: {}, states: {}, categories: {}, rangeStart: {}, rangeEnd: {}, from: {}, cursor: {}, size: {}",
+                users, states, categories, rangeStart, rangeEnd, from, cursor, size);
+
+        if (cursor != null) {
+            CursorPage<EventDto> page = eventService.getAllByCursor(users, states, categories, rangeStart, rangeEnd, cursor, size);
+            log.info("Events list for admin role fetched successfully with {} events", page.getContent().size());
+            HttpHeaders headers = new HttpHeaders();
+            if (page.getNextCursor() != null) {
+                headers.set(CursorPage.NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+        }
 
         List<EventDto> events = eventService.getAll(users, states, categories, rangeStart, rangeEnd, from, size);
         log.info("Events list for admin role fetched successfully with {} events", events.size());
@@ -1,7 +1,9 @@
 package ru.practicum.event.controller;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
@@ -14,13 +16,16 @@ import ru.practicum.StatisticClient;
 import ru.practicum.dto.event.EventDto;
 import ru.practicum.dto.event.EventShortDto;
 import ru.practicum.dto.event.EventSortOption;
+import ru.practicum.event.CursorPage;
 import ru.practicum.event.service.EventService;
+import ru.practicum.event.service.PublicEventSearchCache;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.ValidationException;
 import javax.validation.constraints.Min;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Supplier;
 
 @RestController
 @Validated
@@ -30,11 +35,14 @@ public class PublicEventController {
 
     private final EventService eventService;
     private final StatisticClient statisticClient;
+    private final ObjectProvider<PublicEventSearchCache> searchCache;
     private final String pattern = "yyyy-MM-dd HH:mm:ss";
 
-    public PublicEventController(EventService eventService, StatisticClient statisticClient) {
+    public PublicEventController(EventService eventService, StatisticClient statisticClient,
+                                 ObjectProvider<PublicEventSearchCache> searchCache) {
         this.eventService = eventService;
         this.statisticClient = statisticClient;
+        this.searchCache = searchCache;
     }
 
     /**
@@ -53,6 +61,8 @@ public class PublicEventController {
      * @param onlyAvailable только события у которых не исчерпан лимит запросов на участие
      * @param sort          вариант сортировки: по дате события или по количеству просмотров
      * @param from          количество событий, которые нужно пропустить для формирования текущего набора
+     * @param cursor        позиция продолжения из заголовка X-Next-Cursor предыдущей страницы, пустая строка для первой страницы;
+     *                      если передана, параметр from не используется
      * @param size          количество событий в наборе
      * @return {@link ResponseEntity} содержащий список {@link EventShortDto} и статус ответа {@link HttpStatus#OK}
      */
@@ -67,19 +77,33 @@ public class PublicEventController {
             @RequestParam(defaultValue = "false") Boolean onlyAvailable,
             @RequestParam(required = false) EventSortOption sort,
             @RequestParam(defaultValue = "0") @Min(0) int from,
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "10") @Min(1) int size) {
         if (rangeStart != null && rangeEnd != null && rangeEnd.isBefore(rangeStart)) {
             throw new ValidationException("Invalid input: 'end' date is before 'start' date");
         }
         log.debug("Endpoint GET /events has been reached with " +
                         "text: {}, categories: {}, paid: {}, rangeStart: {}," +
-                        " rangeEnd: {}, onlyAvailable: {}, sort: {}, from: {}, size: {}",
-                text, categories, paid, rangeStart, rangeEnd, onlyAvailable, sort, from, size);
+                        " rangeEnd: {}, onlyAvailable: {}, sort: {}, from: {}, cursor: {}, size: {}",
+                text, categories, paid, rangeStart, rangeEnd, onlyAvailable, sort, from, cursor, size);
 
-        List<EventShortDto> events = eventService.getAll(text, categories, paid, rangeStart, rangeEnd, onlyAvailable, sort, from, size);
+        Supplier<CursorPage<EventShortDto>> search = () -> cursor != null
+                ? eventService.getAllByCursor(text, categories, paid, rangeStart, rangeEnd, onlyAvailable, sort, cursor, size)
+                : new CursorPage<>(eventService.getAll(text, categories, paid, rangeStart, rangeEnd, onlyAvailable, sort, from, size), null);
+        PublicEventSearchCache cache = searchCache.getIfAvailable();
+        CursorPage<EventShortDto> page = cache == null
+                ? search.get()
+                : cache.get(PublicEventSearchCache.Key.of(text, categories, paid, rangeStart, rangeEnd, onlyAvailable,
+                sort, from, cursor, size), search);
+
+        List<EventShortDto> events = page.getContent();
+        HttpHeaders headers = new HttpHeaders();
+        if (page.getNextCursor() != null) {
+            headers.set(CursorPage.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
         statisticClient.hitStatistic("ewm-service", "/events", request.getRemoteAddr(), LocalDateTime.now());
         log.info("Event's list fetched successfully with {} events", events.size());
-        return new ResponseEntity<>(events, HttpStatus.OK);
+        return new ResponseEntity<>(events, headers, HttpStatus.OK);
     }
 
     /**
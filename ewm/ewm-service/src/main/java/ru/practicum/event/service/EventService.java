@@ -7,6 +7,7 @@ import ru.practicum.dto.event.EventState;
 import ru.practicum.dto.event.NewEventDto;
 import ru.practicum.dto.event.admin.AdminUpdateEventRequest;
 import ru.practicum.dto.event.user.UserUpdateEventRequest;
+import ru.practicum.event.CursorPage;
 import ru.practicum.event.Event;
 
 import java.time.LocalDateTime;
@@ -22,14 +23,49 @@ public interface EventService {
 
     Event getEntityById(Long eventId);
 
+    /**
+     * Событие с блокировкой строки до конца текущей транзакции: пока она не завершится,
+     * параллельные заявки не изменят счётчик подтверждённых заявок.
+     */
+    Event getEntityByIdForUpdate(Long eventId);
+
     EventDto getById(Long eventId);
 
+    /**
+     * Занимает место на событии с ограниченным числом участников.
+     * Должен вызываться в транзакции создания или подтверждения заявки, чтобы место освободилось при её откате.
+     *
+     * @return false, если лимит участников уже достигнут
+     */
+    boolean reserveSeat(Long eventId);
+
+    /**
+     * Изменяет счётчик подтверждённых заявок события без проверки лимита участников:
+     * для событий без лимита и при отмене подтверждённой заявки.
+     * Должен вызываться в транзакции, в которой меняется статус заявки.
+     */
+    void addConfirmedRequests(Long eventId, long delta);
+
     EventDto getById(Long userId, Long eventId);
 
     List<EventShortDto> getByUserId(Long userId, int from, int size);
 
     List<EventDto> getAll(List<Long> users, List<EventState> states, List<Long> categories, LocalDateTime rangeStart, LocalDateTime rangeEnd, int from, int size);
 
+    /**
+     * Поиск событий администратором с продолжением по позиции (eventDate, id) вместо смещения.
+     *
+     * @param cursor позиция, выданная предыдущей страницей, или пустая строка для первой страницы
+     */
+    CursorPage<EventDto> getAllByCursor(List<Long> users, List<EventState> states, List<Long> categories, LocalDateTime rangeStart, LocalDateTime rangeEnd, String cursor, int size);
+
     List<EventShortDto> getAll(String text, List<Long> categories, Boolean paid, LocalDateTime rangeStart, LocalDateTime rangeEnd, Boolean onlyAvailable, EventSortOption sort, int from, int size);
 
+    /**
+     * Публичный поиск событий с продолжением по позиции (eventDate, id) или (views, id) в зависимости от сортировки.
+     *
+     * @param cursor позиция, выданная предыдущей страницей, или пустая строка для первой страницы
+     */
+    CursorPage<EventShortDto> getAllByCursor(String text, List<Long> categories, Boolean paid, LocalDateTime rangeStart, LocalDateTime rangeEnd, Boolean onlyAvailable, EventSortOption sort, String cursor, int size);
+
 }
@@ -1,11 +1,22 @@
 package ru.practicum.event.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
 import ru.practicum.StatisticClient;
 import ru.practicum.category.service.CategoryService;
 import ru.practicum.dto.event.EventDto;
@@ -16,21 +27,36 @@ import ru.practicum.dto.event.NewEventDto;
 import ru.practicum.dto.event.admin.AdminAction;
 import ru.practicum.dto.event.admin.AdminUpdateEventRequest;
 import ru.practicum.dto.event.user.UserUpdateEventRequest;
-import ru.practicum.dto.requests.RequestStatus;
+import ru.practicum.event.ConfirmedRequestsChangedEvent;
+import ru.practicum.event.CursorPage;
 import ru.practicum.event.Event;
+import ru.practicum.event.EventChangedEvent;
+import ru.practicum.event.EventCursor;
 import ru.practicum.event.EventMapper;
 import ru.practicum.event.EventRepository;
+import ru.practicum.event.EventShortView;
 import ru.practicum.event.EventSpecifications;
+import ru.practicum.event.TextSearchMode;
 import ru.practicum.exception.ConditionNotMetException;
 import ru.practicum.exception.NotFoundException;
-import ru.practicum.request.ParticipationRequestRepository;
 import ru.practicum.user.service.UserService;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
+@Slf4j
 public class EventServiceImpl implements EventService {
 
     private final EventRepository eventRepository;
@@ -38,17 +64,59 @@ public class EventServiceImpl implements EventService {
     private final CategoryService categoryService;
     private final EventMapper eventMapper;
     private final StatisticClient statisticClient;
-    private final ParticipationRequestRepository participationRequestRepository;
+    private final EventViewService eventViewService;
+    private final TextSearchMode textSearchMode;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectProvider<PublishedEventIndex> publishedEventIndex;
+    private final SingleFlight<Long, EventDto> publishedEvents;
+    private final Cache<Long, EventDto> recentPublishedEvents;
+    private final AtomicLong recentPublishedEventInvalidations = new AtomicLong();
+    private final Cache<Long, LocalDateTime> publicationDates;
+    private final Cache<Long, Long> lastKnownViews;
+    private final Duration statsDeadline;
+    private final Counter viewsTimeoutCounter;
+    private final Counter viewsErrorCounter;
 
     @Autowired
     public EventServiceImpl(EventRepository eventRepository, UserService userService,
-                            CategoryService categoryService, EventMapper eventMapper, StatisticClient statisticClient, ParticipationRequestRepository participationRequestRepository) {
+                            CategoryService categoryService, EventMapper eventMapper, StatisticClient statisticClient,
+                            EventViewService eventViewService,
+                            @Value("${ewm.search.text-mode:LIKE}") TextSearchMode textSearchMode,
+                            ApplicationEventPublisher eventPublisher,
+                            ObjectProvider<PublishedEventIndex> publishedEventIndex,
+                            @Value("${ewm.events.micro-cache-ttl:PT0S}") Duration microCacheTtl,
+                            @Value("${ewm.events.stats-deadline:PT0.3S}") Duration statsDeadline,
+                            @Value("${ewm.events.load-timeout:PT5S}") Duration loadTimeout,
+                            MeterRegistry meterRegistry) {
         this.eventRepository = eventRepository;
         this.userService = userService;
         this.categoryService = categoryService;
         this.eventMapper = eventMapper;
         this.statisticClient = statisticClient;
-        this.participationRequestRepository = participationRequestRepository;
+        this.eventViewService = eventViewService;
+        this.textSearchMode = textSearchMode;
+        this.eventPublisher = eventPublisher;
+        this.publishedEventIndex = publishedEventIndex;
+        this.publishedEvents = new SingleFlight<>(loadTimeout);
+        this.recentPublishedEvents = microCacheTtl.isZero() ? null : Caffeine.newBuilder()
+                .expireAfterWrite(microCacheTtl)
+                .maximumSize(10_000)
+                .build();
+        this.publicationDates = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .build();
+        this.lastKnownViews = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .build();
+        this.statsDeadline = statsDeadline;
+        this.viewsTimeoutCounter = Counter.builder("ewm.events.views.fallback")
+                .tag("reason", "deadline")
+                .description("Event details served with last known views because the stats server did not answer")
+                .register(meterRegistry);
+        this.viewsErrorCounter = Counter.builder("ewm.events.views.fallback")
+                .tag("reason", "error")
+                .description("Event details served with last known views because the stats server did not answer")
+                .register(meterRegistry);
     }
 
     @Override
@@ -85,11 +153,14 @@ public class EventServiceImpl implements EventService {
                 EventState.PUBLISHED.equals(event.getState()))
             throw new ConditionNotMetException("Event can only be rejected if it is not published.");
 
+        Long previousCategoryId = event.getCategory() == null ? null : event.getCategory().getId();
         if (updateEvent.getCategory() != null)
             event.setCategory(categoryService.getEntityById(updateEvent.getCategory()));
 
         eventMapper.updateEventFromAdminRequest(updateEvent, event);
-        return eventMapper.toDto(eventRepository.save(event));
+        Event saved = eventRepository.save(event);
+        eventPublisher.publishEvent(new EventChangedEvent(saved, previousCategoryId));
+        return eventMapper.toDto(saved);
     }
 
     @Override
@@ -108,11 +179,14 @@ public class EventServiceImpl implements EventService {
                 updateEvent.getEventDate().isBefore(LocalDateTime.now().plusHours(2)))
             throw new ConditionNotMetException("Event date must be at least two hours from the current time.");
 
+        Long previousCategoryId = event.getCategory() == null ? null : event.getCategory().getId();
         if (updateEvent.getCategory() != null)
             event.setCategory(categoryService.getEntityById(updateEvent.getCategory()));
 
         eventMapper.updateEventFromUserRequest(updateEvent, event);
-        return eventMapper.toDto(eventRepository.save(event));
+        Event saved = eventRepository.save(event);
+        eventPublisher.publishEvent(new EventChangedEvent(saved, previousCategoryId));
+        return eventMapper.toDto(saved);
     }
 
     @Override
@@ -121,39 +195,156 @@ public class EventServiceImpl implements EventService {
                 new NotFoundException("Event with id=" + eventId + " was not found"));
     }
 
+    @Override
+    @Transactional
+    public Event getEntityByIdForUpdate(Long eventId) {
+        return eventRepository.findByIdForUpdate(eventId).orElseThrow(() ->
+                new NotFoundException("Event with id=" + eventId + " was not found"));
+    }
+
+    /**
+     * Одновременные запросы одного события выполняют одно чтение из базы и один запрос к сервису статистики,
+     * остальные ждут его результата. Если задан ewm.events.micro-cache-ttl, результат ещё столько же
+     * отдаётся из памяти; изменение события удаляет его оттуда. Результат загрузки, во время которой событие
+     * изменилось, в памяти не остаётся. Ожидание чужой загрузки ограничено ewm.events.load-timeout.
+     */
     @Override
     public EventDto getById(Long eventId) {
-        Event event = getEntityById(eventId);
+        if (recentPublishedEvents == null) {
+            return publishedEvents.execute(eventId, () -> loadPublished(eventId));
+        }
+        EventDto recent = recentPublishedEvents.getIfPresent(eventId);
+        if (recent != null) {
+            return recent;
+        }
+        return publishedEvents.execute(eventId, () -> {
+            long generation = recentPublishedEventInvalidations.get();
+            EventDto dto = loadPublished(eventId);
+            recentPublishedEvents.put(eventId, dto);
+            if (recentPublishedEventInvalidations.get() != generation) {
+                recentPublishedEvents.invalidate(eventId);
+            }
+            return dto;
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventChanged(EventChangedEvent change) {
+        invalidateRecent(change.getEvent().getId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onConfirmedRequestsChanged(ConfirmedRequestsChangedEvent change) {
+        invalidateRecent(change.getEventId());
+    }
+
+    private void invalidateRecent(Long eventId) {
+        if (recentPublishedEvents != null) {
+            recentPublishedEventInvalidations.incrementAndGet();
+            recentPublishedEvents.invalidate(eventId);
+        }
+    }
+
+    /**
+     * Событие из базы и его просмотры из сервиса статистики.
+     * Дата публикации не меняется, поэтому для уже читавшихся событий запрос к статистике уходит сразу
+     * и выполняется одновременно с чтением из базы. На ответ статистики отводится ewm.events.stats-deadline
+     * от начала загрузки, после этого событие отдаётся с последним известным числом просмотров:
+     * наибольшим из полученного ранее и event.views, который обновляет {@link EventViewsSynchronizer}.
+     */
+    private EventDto loadPublished(Long eventId) {
+        long deadline = System.nanoTime() + statsDeadline.toNanos();
+        LocalDateTime publishedOn = publicationDates.getIfPresent(eventId);
+        CompletableFuture<Long> views = publishedOn == null ? null : requestViews(eventId, publishedOn);
+
+        Event event;
+        try {
+            event = getEntityById(eventId);
+        } catch (RuntimeException e) {
+            if (views != null) {
+                views.cancel(true);
+            }
+            throw e;
+        }
         if (!event.getState().equals(EventState.PUBLISHED)) {
             throw new NotFoundException("Event not yet published");
         }
-        var dto = eventMapper.toDto(event);
-        var stats = statisticClient.getStatistics(dto.getPublishedOn(), LocalDateTime.now(), List.of("/events/" + eventId), true);
-        if (!stats.isEmpty()) {
-            dto.setViews(stats.get(0).getHits());
-        } else {
-            dto.setViews(0L);
+        if (views == null) {
+            publicationDates.put(eventId, event.getPublishedOn());
+            views = requestViews(eventId, event.getPublishedOn());
         }
-        dto.setConfirmedRequests(participationRequestRepository.countByEventIdAndStatus(dto.getId(), RequestStatus.CONFIRMED));
+
+        var dto = eventMapper.toDto(event);
+        dto.setViews(awaitViews(eventId, views, deadline, event.getViews()));
         return dto;
     }
 
+    private CompletableFuture<Long> requestViews(Long eventId, LocalDateTime publishedOn) {
+        return statisticClient.getStatisticsAsync(publishedOn, LocalDateTime.now(), List.of("/events/" + eventId), true)
+                .map(stats -> stats.isEmpty() ? 0L : stats.get(0).getHits())
+                .toFuture();
+    }
+
+    private Long awaitViews(Long eventId, CompletableFuture<Long> views, long deadline, Long storedViews) {
+        try {
+            Long hits = views.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            lastKnownViews.asMap().merge(eventId, hits, Long::max);
+            return hits;
+        } catch (TimeoutException e) {
+            views.cancel(true);
+            viewsTimeoutCounter.increment();
+            log.warn("Stats server missed the {} deadline for event {}, last known views returned",
+                    statsDeadline, eventId);
+        } catch (ExecutionException e) {
+            viewsErrorCounter.increment();
+            log.warn("Failed to get views of event {}, last known views returned: {}",
+                    eventId, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            views.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+        Long known = lastKnownViews.getIfPresent(eventId);
+        long stored = storedViews == null ? 0L : storedViews;
+        return known == null ? stored : Math.max(known, stored);
+    }
+
     @Override
     public EventDto getById(Long userId, Long eventId) {
         Event event = getEntityById(eventId);
         if (!event.getInitiator().getId().equals(userId)) {
             throw new ConditionNotMetException("User is not the initiator of the event");
         }
-        var dto = eventMapper.toDto(event);
-        dto.setConfirmedRequests(participationRequestRepository.countByEventIdAndStatus(dto.getId(), RequestStatus.CONFIRMED));
         return eventMapper.toDto(event);
     }
 
+    @Override
+    @Transactional
+    public boolean reserveSeat(Long eventId) {
+        if (eventRepository.reserveSeat(eventId) == 0) {
+            return false;
+        }
+        eventPublisher.publishEvent(new ConfirmedRequestsChangedEvent(eventId, 1));
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public void addConfirmedRequests(Long eventId, long delta) {
+        if (delta != 0) {
+            eventRepository.addConfirmedRequests(eventId, delta);
+            eventPublisher.publishEvent(new ConfirmedRequestsChangedEvent(eventId, delta));
+        }
+    }
+
     @Override
     public List<EventShortDto> getByUserId(Long userId, int offset, int limit) {
         PageRequest pageRequest = PageRequest.of(offset / limit, limit);
-        List<Event> events = eventRepository.findByInitiatorId(userId, pageRequest);
-        return events.stream().map(eventMapper::toShortDto).collect(Collectors.toList());
+        List<EventShortView> events = eventRepository.findShortViews(EventSpecifications.hasUsers(List.of(userId)), pageRequest).getContent();
+        Map<Long, Long> views = getViews(events, EventShortView::getId, EventShortView::getPublishedOn);
+        return events.stream()
+                .map(eventMapper::toShortDto)
+                .peek(dto -> dto.setViews(views.getOrDefault(dto.getId(), dto.getViews())))
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -161,19 +352,28 @@ public class EventServiceImpl implements EventService {
     public List<EventDto> getAll(List<Long> users, List<EventState> states,
                                  List<Long> categories, LocalDateTime rangeStart,
                                  LocalDateTime rangeEnd, int from, int size) {
-        Specification<Event> spec = Specification.where(EventSpecifications.hasUsers(users))
-                .and(EventSpecifications.hasStates(states))
-                .and(EventSpecifications.hasCategories(categories))
-                .and(EventSpecifications.hasRangeStart(rangeStart))
-                .and(EventSpecifications.hasRangeEnd(rangeEnd));
-
+        Specification<Event> spec = adminSpecification(users, states, categories, rangeStart, rangeEnd);
         PageRequest pageRequest = PageRequest.of(from / size, size);
-        return eventRepository.findAll(spec, pageRequest)
-                .getContent()
-                .stream()
-                .map(eventMapper::toDto)
-                .peek(dto -> dto.setConfirmedRequests(participationRequestRepository.countByEventIdAndStatus(dto.getId(), RequestStatus.CONFIRMED)))
-                .collect(Collectors.toList());
+        return toDtos(eventRepository.findSlice(spec, pageRequest).getContent());
+    }
+
+    @Override
+    @Transactional
+    public CursorPage<EventDto> getAllByCursor(List<Long> users, List<EventState> states,
+                                               List<Long> categories, LocalDateTime rangeStart,
+                                               LocalDateTime rangeEnd, String cursor, int size) {
+        EventCursor after = cursor == null || cursor.isEmpty() ? null : EventCursor.decode(cursor, EventSortOption.EVENT_DATE);
+        Specification<Event> spec = adminSpecification(users, states, categories, rangeStart, rangeEnd)
+                .and(EventSpecifications.isAfter(after));
+        PageRequest pageRequest = PageRequest.of(0, size, EventCursor.sortOf(EventSortOption.EVENT_DATE));
+
+        Slice<Event> events = eventRepository.findSlice(spec, pageRequest);
+        String nextCursor = null;
+        if (events.hasNext()) {
+            Event last = events.getContent().get(events.getNumberOfElements() - 1);
+            nextCursor = EventCursor.afterEventDate(last.getEventDate(), last.getId()).encode();
+        }
+        return new CursorPage<>(toDtos(events.getContent()), nextCursor);
     }
 
     @Override
@@ -182,21 +382,123 @@ public class EventServiceImpl implements EventService {
                                       LocalDateTime rangeStart, LocalDateTime rangeEnd,
                                       Boolean onlyAvailable, EventSortOption sort,
                                       int from, int size) {
-        Specification<Event> spec = Specification.where(EventSpecifications.hasText(text))
+        PublishedEventIndex index = publishedEventIndex.getIfAvailable();
+        if (index != null && index.isReady()) {
+            List<Long> ids = index.search(text, categories, paid, rangeStart, rangeEnd, onlyAvailable, sort, from, size);
+            return toShortDtos(findShortViewsInOrder(ids));
+        }
+
+        boolean ranked = sort == null && textSearchMode == TextSearchMode.RANKED && text != null && !text.isBlank();
+        Specification<Event> spec = publicSpecification(text, ranked, categories, paid, rangeStart, rangeEnd, onlyAvailable);
+        Sort sorting;
+        if (ranked) {
+            // Порядок по релевантности задаёт спецификация
+            sorting = Sort.unsorted();
+        } else {
+            sorting = sort == EventSortOption.EVENT_DATE ? Sort.by(Sort.Order.asc("eventDate")) : Sort.by(Sort.Order.desc("views"));
+        }
+        PageRequest pageRequest = PageRequest.of(from / size, size, sorting);
+        return toShortDtos(eventRepository.findShortViews(spec, pageRequest).getContent());
+    }
+
+    @Override
+    @Transactional
+    public CursorPage<EventShortDto> getAllByCursor(String text, List<Long> categories, Boolean paid,
+                                                    LocalDateTime rangeStart, LocalDateTime rangeEnd,
+                                                    Boolean onlyAvailable, EventSortOption sort,
+                                                    String cursor, int size) {
+        EventSortOption order = sort == EventSortOption.EVENT_DATE ? EventSortOption.EVENT_DATE : EventSortOption.VIEWS;
+        EventCursor after = cursor == null || cursor.isEmpty() ? null : EventCursor.decode(cursor, order);
+        Specification<Event> spec = publicSpecification(text, false, categories, paid, rangeStart, rangeEnd, onlyAvailable)
+                .and(EventSpecifications.isAfter(after));
+        PageRequest pageRequest = PageRequest.of(0, size, EventCursor.sortOf(order));
+
+        Slice<EventShortView> events = eventRepository.findShortViews(spec, pageRequest);
+        String nextCursor = null;
+        if (events.hasNext()) {
+            EventShortView last = events.getContent().get(events.getNumberOfElements() - 1);
+            nextCursor = (order == EventSortOption.VIEWS
+                    ? EventCursor.afterViews(last.getViews(), last.getId())
+                    : EventCursor.afterEventDate(last.getEventDate(), last.getId())).encode();
+        }
+        return new CursorPage<>(toShortDtos(events.getContent()), nextCursor);
+    }
+
+    private Specification<Event> adminSpecification(List<Long> users, List<EventState> states,
+                                                    List<Long> categories, LocalDateTime rangeStart,
+                                                    LocalDateTime rangeEnd) {
+        return Specification.where(EventSpecifications.hasUsers(users))
+                .and(EventSpecifications.hasStates(states))
+                .and(EventSpecifications.hasCategories(categories))
+                .and(EventSpecifications.hasRangeStart(rangeStart))
+                .and(EventSpecifications.hasRangeEnd(rangeEnd));
+    }
+
+    private Specification<Event> publicSpecification(String text, boolean ranked, List<Long> categories, Boolean paid,
+                                                     LocalDateTime rangeStart, LocalDateTime rangeEnd,
+                                                     Boolean onlyAvailable) {
+        Specification<Event> textSpec = textSearchMode == TextSearchMode.LIKE
+                ? EventSpecifications.hasText(text)
+                : EventSpecifications.matchesText(text, ranked);
+        return Specification.where(textSpec)
                 .and(EventSpecifications.hasCategories(categories))
                 .and(EventSpecifications.isPaid(paid))
                 .and(EventSpecifications.hasRangeStart(rangeStart))
                 .and(EventSpecifications.hasRangeEnd(rangeEnd))
                 .and(EventSpecifications.isOnlyAvailable(onlyAvailable));
+    }
 
-        Sort sorting = sort == EventSortOption.EVENT_DATE ? Sort.by(Sort.Order.asc("eventDate")) : Sort.by(Sort.Order.desc("views"));
-        PageRequest pageRequest = PageRequest.of(from / size, size, sorting);
-
-        return eventRepository.findAll(spec, pageRequest)
-                .getContent()
+    /**
+     * Краткие представления событий в порядке переданных идентификаторов.
+     */
+    private List<EventShortView> findShortViewsInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, EventShortView> views = eventRepository.findShortViews(EventSpecifications.hasIds(ids), Pageable.unpaged())
                 .stream()
+                .collect(Collectors.toMap(EventShortView::getId, Function.identity()));
+        return ids.stream()
+                .map(views::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private List<EventDto> toDtos(List<Event> events) {
+        Map<Long, Long> views = getViews(events, Event::getId, Event::getPublishedOn);
+        return events.stream()
+                .map(eventMapper::toDto)
+                .peek(dto -> dto.setViews(views.getOrDefault(dto.getId(), dto.getViews())))
+                .collect(Collectors.toList());
+    }
+
+    private List<EventShortDto> toShortDtos(List<EventShortView> events) {
+        Map<Long, Long> views = getViews(events, EventShortView::getId, EventShortView::getPublishedOn);
+        return events.stream()
                 .map(eventMapper::toShortDto)
+                .peek(dto -> dto.setViews(views.getOrDefault(dto.getId(), dto.getViews())))
                 .collect(Collectors.toList());
     }
+
+    /**
+     * Просмотры опубликованных событий страницы, не более одного запроса к сервису статистики на страницу.
+     */
+    private <T> Map<Long, Long> getViews(List<T> events, Function<T, Long> id, Function<T, LocalDateTime> publishedOn) {
+        List<Long> published = new ArrayList<>(events.size());
+        LocalDateTime start = null;
+        for (T event : events) {
+            LocalDateTime eventPublishedOn = publishedOn.apply(event);
+            if (eventPublishedOn != null) {
+                published.add(id.apply(event));
+                if (start == null || eventPublishedOn.isBefore(start)) {
+                    start = eventPublishedOn;
+                }
+            }
+        }
+        if (published.isEmpty()) {
+            return Map.of();
+        }
+        return eventViewService.getViews(published, start);
+    }
 }
 
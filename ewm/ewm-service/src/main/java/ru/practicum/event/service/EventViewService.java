@@ -0,0 +1,10 @@
+package ru.practicum.event.service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+
+public interface EventViewService {
+
+    Map<Long, Long> getViews(Collection<Long> eventIds, LocalDateTime start);
+}
@@ -0,0 +1,63 @@
+package ru.practicum.event.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.practicum.StatisticClient;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Количество просмотров событий для списков.
+ * Просмотры страницы событий запрашиваются у сервиса статистики одним запросом и кэшируются
+ * на ewm.views.cache-ttl, поэтому повторная загрузка той же страницы не обращается к сервису статистики.
+ * Если сервис статистики недоступен, возвращаются только закэшированные значения.
+ */
+@Service
+@Slf4j
+public class EventViewServiceImpl implements EventViewService {
+
+    private final StatisticClient statisticClient;
+    private final Cache<Long, Long> views;
+
+    @Autowired
+    public EventViewServiceImpl(StatisticClient statisticClient,
+                                @Value("${ewm.views.cache-ttl:10s}") Duration cacheTtl,
+                                @Value("${ewm.views.cache-size:10000}") long cacheSize) {
+        this.statisticClient = statisticClient;
+        this.views = Caffeine.newBuilder()
+                .expireAfterWrite(cacheTtl)
+                .maximumSize(cacheSize)
+                .build();
+    }
+
+    /**
+     * @param eventIds идентификаторы опубликованных событий
+     * @param start    самая ранняя дата публикации среди событий
+     */
+    @Override
+    public Map<Long, Long> getViews(Collection<Long> eventIds, LocalDateTime start) {
+        if (eventIds.isEmpty()) {
+            return Map.of();
+        }
+        try {
+            return views.getAll(eventIds, missing -> statisticClient.getViews(toList(missing), start));
+        } catch (RuntimeException e) {
+            log.warn("Failed to fetch views of {} events: {}", eventIds.size(), e.getMessage());
+            return views.getAllPresent(eventIds);
+        }
+    }
+
+    private static List<Long> toList(Iterable<? extends Long> ids) {
+        return StreamSupport.stream(ids.spliterator(), false).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,196 @@
+package ru.practicum.event.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.StatisticClient;
+import ru.practicum.dto.event.EventState;
+import ru.practicum.dto.statistics.ViewStatsDto;
+import ru.practicum.event.EventPublication;
+import ru.practicum.event.EventRepository;
+import ru.practicum.event.EventViewsChangedEvent;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Переносит просмотры событий из сервиса статистики в столбец event.views, по которому сортирует публичный поиск.
+ * Запускается раз в ewm.views.sync.interval. Первый запуск после старта приложения обходит все опубликованные
+ * события пачками по ewm.views.sync.batch-size, следующие запрашивают у сервиса статистики только uri,
+ * просмотренные с прошлой синхронизации, и пересчитывают уникальные просмотры только этих событий.
+ * Окно запроса начинается на ewm.views.sync.lag раньше прошлой синхронизации, чтобы учесть просмотры,
+ * которые клиент статистики доставил с задержкой; записываются абсолютные значения, поэтому перекрытие окон безопасно.
+ * Обращения к сервису статистики выполняются вне транзакций, каждая пачка записывается одним пакетом JDBC.
+ * Если синхронизация не удаётся дольше ewm.views.sync.max-staleness, это видно по метрике ewm.views.sync.stale
+ * и предупреждению в журнале.
+ */
+@Component
+@ConditionalOnProperty(name = "ewm.views.sync.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class EventViewsSynchronizer {
+    private static final String EVENTS_URI = "/events/";
+
+    private final EventRepository eventRepository;
+    private final StatisticClient statisticClient;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration lag;
+    private final Duration maxStaleness;
+    private final int batchSize;
+    private final Counter updatedCounter;
+    private final Counter failedCounter;
+
+    private volatile LocalDateTime syncedUntil;
+    private volatile long lastSuccessNanos;
+
+    @Autowired
+    public EventViewsSynchronizer(EventRepository eventRepository,
+                                  StatisticClient statisticClient,
+                                  ApplicationEventPublisher eventPublisher,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${ewm.views.sync.lag:PT1M}") Duration lag,
+                                  @Value("${ewm.views.sync.max-staleness:PT5M}") Duration maxStaleness,
+                                  @Value("${ewm.views.sync.batch-size:500}") int batchSize) {
+        this.eventRepository = eventRepository;
+        this.statisticClient = statisticClient;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.lag = lag;
+        this.maxStaleness = maxStaleness;
+        this.batchSize = batchSize;
+        this.lastSuccessNanos = System.nanoTime();
+
+        Gauge.builder("ewm.views.sync.staleness", this, synchronizer -> synchronizer.getStaleness().toMillis() / 1000.0)
+                .description("Time since event views were last synchronized from the stats server")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("ewm.views.sync.stale", this, synchronizer -> synchronizer.isStale() ? 1 : 0)
+                .description("1 if event views are older than ewm.views.sync.max-staleness")
+                .register(meterRegistry);
+        this.updatedCounter = Counter.builder("ewm.views.sync.events.updated")
+                .description("Events whose views column was changed by the synchronizer")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("ewm.views.sync.failures")
+                .description("Event views synchronizations failed because the stats server was unavailable")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return количество событий, у которых изменились просмотры
+     */
+    @Scheduled(fixedDelayString = "${ewm.views.sync.interval:PT30S}",
+            initialDelayString = "${ewm.views.sync.interval:PT30S}")
+    public int synchronize() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            int updated = syncedUntil == null ? synchronizeAll() : synchronizeViewed(syncedUntil.minus(lag), now);
+            syncedUntil = now;
+            lastSuccessNanos = System.nanoTime();
+            updatedCounter.increment(updated);
+            log.debug("Views of {} events synchronized", updated);
+            return updated;
+        } catch (RuntimeException e) {
+            failedCounter.increment();
+            if (isStale()) {
+                log.warn("Event views were not synchronized for {} s: {}", getStaleness().toSeconds(), e.getMessage());
+            } else {
+                log.info("Event views synchronization failed: {}", e.getMessage());
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Время с последней успешной синхронизации, до первой — со старта приложения.
+     */
+    public Duration getStaleness() {
+        return Duration.ofNanos(System.nanoTime() - lastSuccessNanos);
+    }
+
+    public boolean isStale() {
+        return getStaleness().compareTo(maxStaleness) > 0;
+    }
+
+    private int synchronizeAll() {
+        int updated = 0;
+        Long lastId = 0L;
+        List<EventPublication> events;
+        do {
+            events = eventRepository.findByStateAndIdGreaterThanOrderById(EventState.PUBLISHED, lastId,
+                    PageRequest.of(0, batchSize));
+            if (!events.isEmpty()) {
+                updated += update(events);
+                lastId = events.get(events.size() - 1).getId();
+            }
+        } while (events.size() == batchSize);
+        return updated;
+    }
+
+    private int synchronizeViewed(LocalDateTime start, LocalDateTime end) {
+        List<ViewStatsDto> stats = statisticClient.getStatistics(start, end, null, false);
+        if (stats == null || stats.isEmpty()) {
+            return 0;
+        }
+        Set<Long> viewed = new LinkedHashSet<>();
+        for (ViewStatsDto stat : stats) {
+            if (stat.getUri() != null && stat.getUri().startsWith(EVENTS_URI)) {
+                try {
+                    viewed.add(Long.parseLong(stat.getUri().substring(EVENTS_URI.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("Unexpected uri {} in stats response", stat.getUri());
+                }
+            }
+        }
+        List<Long> ids = new ArrayList<>(viewed);
+        int updated = 0;
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> batch = ids.subList(from, Math.min(ids.size(), from + batchSize));
+            updated += update(eventRepository.findByStateAndIdIn(EventState.PUBLISHED, batch));
+        }
+        return updated;
+    }
+
+    private int update(List<EventPublication> events) {
+        if (events.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = events.stream().map(EventPublication::getId).collect(Collectors.toList());
+        LocalDateTime start = events.stream()
+                .map(EventPublication::getPublishedOn)
+                .filter(Objects::nonNull)
+                .min(Comparator.naturalOrder())
+                .orElse(null);
+        Map<Long, Long> views = statisticClient.getViews(ids, start);
+
+        Integer updated = transactionTemplate.execute(status -> {
+            List<Long> changed = eventRepository.updateViews(views);
+            if (!changed.isEmpty()) {
+                Map<Long, Long> changedViews = new HashMap<>();
+                changed.forEach(id -> changedViews.put(id, views.get(id)));
+                eventPublisher.publishEvent(new EventViewsChangedEvent(changedViews));
+            }
+            return changed.size();
+        });
+        return updated == null ? 0 : updated;
+    }
+}
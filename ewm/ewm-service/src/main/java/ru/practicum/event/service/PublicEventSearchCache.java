@@ -0,0 +1,173 @@
+package ru.practicum.event.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.dto.event.EventShortDto;
+import ru.practicum.dto.event.EventSortOption;
+import ru.practicum.dto.event.EventState;
+import ru.practicum.event.CursorPage;
+import ru.practicum.event.Event;
+import ru.practicum.event.EventChangedEvent;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш страниц публичного поиска событий, включается свойством ewm.search.cache.enabled.
+ * Ключ — нормализованный набор фильтров и позиция страницы: текст без учёта регистра и лишних пробелов,
+ * категории без повторов и порядка.
+ * Изменение события после фиксации транзакции удаляет страницы по его новой и прежней категории,
+ * страницы без фильтра по категориям и страницы, на которых событие было. Изменения событий
+ * в ожидании публикации не учитываются: они не попадают в публичную выдачу.
+ * Просмотры, подтверждённые заявки и фильтр по текущему времени устаревают не дольше чем на
+ * ewm.search.cache.max-staleness. Размер кэша ограничен ewm.search.cache.max-size по оценке занимаемой памяти.
+ */
+@Component
+@ConditionalOnProperty(name = "ewm.search.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class PublicEventSearchCache {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int EVENT_OVERHEAD = 512;
+
+    private final Cache<Key, Entry> pages;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Autowired
+    public PublicEventSearchCache(MeterRegistry meterRegistry,
+                                  @Value("${ewm.search.cache.max-staleness:PT10S}") Duration maxStaleness,
+                                  @Value("${ewm.search.cache.max-size:32MB}") DataSize maxSize) {
+        this.pages = Caffeine.newBuilder()
+                .expireAfterWrite(maxStaleness)
+                .maximumWeight(maxSize.toBytes())
+                .weigher((Key key, Entry entry) -> entry.getWeight())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "eventSearch");
+        Gauge.builder("ewm.search.cache.footprint", pages,
+                        cache -> cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .description("Estimated memory taken by cached public event search pages")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Страница из кэша или из loader, если её нет.
+     * Страница, загрузка которой пересеклась с изменением события, в кэше не остаётся.
+     */
+    public CursorPage<EventShortDto> get(Key key, Supplier<CursorPage<EventShortDto>> loader) {
+        Entry cached = pages.getIfPresent(key);
+        if (cached != null) {
+            return cached.getPage();
+        }
+        long generation = invalidations.get();
+        CursorPage<EventShortDto> page = loader.get();
+        pages.put(key, new Entry(page, weigh(key, page)));
+        if (invalidations.get() != generation) {
+            pages.invalidate(key);
+        }
+        return page;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventChanged(EventChangedEvent change) {
+        Event event = change.getEvent();
+        if (event.getState() == EventState.PENDING) {
+            return;
+        }
+        Long categoryId = event.getCategory() == null ? null : event.getCategory().getId();
+        Long previousCategoryId = change.getPreviousCategoryId();
+        invalidations.incrementAndGet();
+        pages.asMap().entrySet().removeIf(cached -> {
+            Set<Long> categories = cached.getKey().getCategories();
+            return categories.isEmpty()
+                    || categoryId != null && categories.contains(categoryId)
+                    || previousCategoryId != null && categories.contains(previousCategoryId)
+                    || cached.getValue().contains(event.getId());
+        });
+    }
+
+    private static int weigh(Key key, CursorPage<EventShortDto> page) {
+        long weight = ENTRY_OVERHEAD + 2L * length(key.getText()) + 2L * length(page.getNextCursor());
+        for (EventShortDto event : page.getContent()) {
+            weight += EVENT_OVERHEAD + 2L * (length(event.getTitle()) + length(event.getAnnotation()));
+        }
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    /**
+     * Нормализованные фильтры публичного поиска и позиция страницы: from для постраничной выдачи
+     * или cursor для выдачи с продолжением.
+     */
+    @Getter
+    @EqualsAndHashCode
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Key {
+        private final String text;
+        private final Set<Long> categories;
+        private final Boolean paid;
+        private final LocalDateTime rangeStart;
+        private final LocalDateTime rangeEnd;
+        private final boolean onlyAvailable;
+        private final EventSortOption sort;
+        private final int from;
+        private final String cursor;
+        private final int size;
+
+        public static Key of(String text, List<Long> categories, Boolean paid,
+                             LocalDateTime rangeStart, LocalDateTime rangeEnd, Boolean onlyAvailable,
+                             EventSortOption sort, int from, String cursor, int size) {
+            String normalizedText = text == null || text.isBlank()
+                    ? null
+                    : WHITESPACE.matcher(text.trim().toLowerCase(Locale.ROOT)).replaceAll(" ");
+            Set<Long> normalizedCategories = categories == null
+                    ? Set.of()
+                    : categories.stream().filter(Objects::nonNull).collect(Collectors.toCollection(TreeSet::new));
+            return new Key(normalizedText, normalizedCategories, paid, rangeStart, rangeEnd,
+                    Boolean.TRUE.equals(onlyAvailable), sort, cursor == null ? from : 0, cursor, size);
+        }
+    }
+
+    @Getter
+    private static class Entry {
+        private final CursorPage<EventShortDto> page;
+        private final Set<Long> eventIds;
+        private final int weight;
+
+        Entry(CursorPage<EventShortDto> page, int weight) {
+            this.page = page;
+            this.eventIds = page.getContent().stream().map(EventShortDto::getId).collect(Collectors.toSet());
+            this.weight = weight;
+        }
+
+        boolean contains(Long eventId) {
+            return eventIds.contains(eventId);
+        }
+    }
+}
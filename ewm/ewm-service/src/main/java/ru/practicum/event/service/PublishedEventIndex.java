@@ -0,0 +1,392 @@
+package ru.practicum.event.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.practicum.dto.event.EventSortOption;
+import ru.practicum.dto.event.EventState;
+import ru.practicum.event.ConfirmedRequestsChangedEvent;
+import ru.practicum.event.Event;
+import ru.practicum.event.EventChangedEvent;
+import ru.practicum.event.EventRepository;
+import ru.practicum.event.EventViewsChangedEvent;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Индекс опубликованных предстоящих событий в памяти для публичного поиска, включается свойством
+ * ewm.search.index.enabled.
+ * Каждому событию присваивается номер документа, фильтры хранятся битовыми множествами по номерам:
+ * инвертированный индекс слов заголовка и аннотации, множества по категориям, платные и доступные события.
+ * Документы также хранятся в массиве, упорядоченном по дате события, поэтому диапазон дат — это отрезок массива.
+ * Поиск сводится к пересечению множеств и к базе данных не обращается.
+ * Индекс строится из базы при старте приложения и обновляется после фиксации транзакции,
+ * в которой событие было изменено.
+ */
+@Component
+@ConditionalOnProperty(name = "ewm.search.index.enabled", havingValue = "true")
+@Slf4j
+public class PublishedEventIndex {
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Comparator<Document> DATE_ORDER = Comparator.comparing((Document document) -> document.eventDate)
+            .thenComparing(document -> document.eventId);
+    private static final Comparator<Document> VIEWS_ORDER = Comparator.comparing((Document document) -> document.views,
+                    Comparator.reverseOrder())
+            .thenComparing(document -> document.eventId);
+
+    private final EventRepository eventRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<Document> documents = new ArrayList<>();
+    private final Deque<Integer> freeDocuments = new ArrayDeque<>();
+    private final Map<Long, Integer> documentsByEventId = new HashMap<>();
+    private final BitSet live = new BitSet();
+    private final BitSet paid = new BitSet();
+    private final BitSet available = new BitSet();
+    private final Map<Long, BitSet> byCategory = new HashMap<>();
+    private final Map<String, BitSet> byToken = new HashMap<>();
+    private int[] byDate = new int[16];
+    private int size;
+
+    private volatile boolean ready;
+
+    @Autowired
+    public PublishedEventIndex(EventRepository eventRepository) {
+        this.eventRepository = eventRepository;
+    }
+
+    /**
+     * События читаются под блокировкой записи: изменения, зафиксированные во время чтения, ждут окончания
+     * перестроения и применяются поверх него, а не теряются при замене индекса устаревшим снимком.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        List<Event> events;
+        lock.writeLock().lock();
+        try {
+            events = eventRepository.findByStateAndEventDateAfter(EventState.PUBLISHED, LocalDateTime.now());
+            documents.clear();
+            freeDocuments.clear();
+            documentsByEventId.clear();
+            live.clear();
+            paid.clear();
+            available.clear();
+            byCategory.clear();
+            byToken.clear();
+            size = 0;
+            events.forEach(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ready = true;
+        log.info("Published event index built with {} events", events.size());
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEventChanged(EventChangedEvent change) {
+        apply(change.getEvent());
+    }
+
+    /**
+     * Счётчик подтверждённых заявок меняется запросом к базе в обход сущности, поэтому приходит отдельным событием.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onConfirmedRequestsChanged(ConfirmedRequestsChangedEvent change) {
+        lock.writeLock().lock();
+        try {
+            Integer number = documentsByEventId.get(change.getEventId());
+            if (number == null) {
+                return;
+            }
+            Document document = documents.get(number);
+            document.confirmedRequests += change.getDelta();
+            available.set(number, document.isAvailable());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Просмотры записываются в базу EventViewsSynchronizer в обход сущности. Порядок по просмотрам
+     * вычисляется при поиске, поэтому достаточно обновить документы.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onViewsChanged(EventViewsChangedEvent change) {
+        lock.writeLock().lock();
+        try {
+            change.getViews().forEach((eventId, views) -> {
+                Integer number = documentsByEventId.get(eventId);
+                if (number != null && views != null) {
+                    documents.get(number).views = views;
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет, заменяет или удаляет событие в зависимости от его состояния.
+     */
+    void apply(Event event) {
+        lock.writeLock().lock();
+        try {
+            remove(event.getId());
+            add(event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Идентификаторы опубликованных событий, подходящих под фильтры публичного поиска, в порядке выдачи.
+     * Фильтры совпадают с EventSpecifications, текст ищется по словам заголовка и аннотации:
+     * событие подходит, если содержит все слова запроса.
+     */
+    public List<Long> search(String text, List<Long> categories, Boolean paid,
+                             LocalDateTime rangeStart, LocalDateTime rangeEnd,
+                             Boolean onlyAvailable, EventSortOption sort, int from, int size) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = (BitSet) live.clone();
+            for (String token : tokenize(text)) {
+                BitSet postings = byToken.get(token);
+                if (postings == null) {
+                    return List.of();
+                }
+                matches.and(postings);
+            }
+            if (categories != null && !categories.isEmpty()) {
+                BitSet inCategories = new BitSet();
+                categories.stream()
+                        .map(byCategory::get)
+                        .filter(Objects::nonNull)
+                        .forEach(inCategories::or);
+                matches.and(inCategories);
+            }
+            if (paid != null) {
+                if (paid) {
+                    matches.and(this.paid);
+                } else {
+                    matches.andNot(this.paid);
+                }
+            }
+            if (Boolean.TRUE.equals(onlyAvailable)) {
+                matches.and(available);
+            }
+
+            int low = rangeStart == null ? upperBound(LocalDateTime.now()) : lowerBound(rangeStart);
+            int high = rangeEnd == null ? this.size : upperBound(rangeEnd);
+            List<Long> result = new ArrayList<>(Math.min(size, Math.max(0, high - low)));
+            if (sort == EventSortOption.EVENT_DATE) {
+                int skipped = 0;
+                for (int i = low; i < high && result.size() < size; i++) {
+                    if (matches.get(byDate[i])) {
+                        if (skipped < from) {
+                            skipped++;
+                        } else {
+                            result.add(documents.get(byDate[i]).eventId);
+                        }
+                    }
+                }
+                return result;
+            }
+
+            BitSet inRange = new BitSet();
+            for (int i = low; i < high; i++) {
+                inRange.set(byDate[i]);
+            }
+            matches.and(inRange);
+            return matches.stream()
+                    .mapToObj(documents::get)
+                    .sorted(VIEWS_ORDER)
+                    .skip(from)
+                    .limit(size)
+                    .map(document -> document.eventId)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(Event event) {
+        if (event.getState() != EventState.PUBLISHED || event.getEventDate() == null) {
+            return;
+        }
+        Document document = new Document(event);
+        int number = freeDocuments.isEmpty() ? documents.size() : freeDocuments.pop();
+        if (number == documents.size()) {
+            documents.add(document);
+        } else {
+            documents.set(number, document);
+        }
+        documentsByEventId.put(document.eventId, number);
+
+        live.set(number);
+        paid.set(number, Boolean.TRUE.equals(event.getPaid()));
+        available.set(number, document.isAvailable());
+        if (document.categoryId != null) {
+            byCategory.computeIfAbsent(document.categoryId, id -> new BitSet()).set(number);
+        }
+        for (String token : document.tokens) {
+            byToken.computeIfAbsent(token, t -> new BitSet()).set(number);
+        }
+
+        if (size == byDate.length) {
+            byDate = Arrays.copyOf(byDate, size * 2);
+        }
+        int position = position(document);
+        System.arraycopy(byDate, position, byDate, position + 1, size - position);
+        byDate[position] = number;
+        size++;
+    }
+
+    private void remove(Long eventId) {
+        Integer number = documentsByEventId.remove(eventId);
+        if (number == null) {
+            return;
+        }
+        Document document = documents.get(number);
+        live.clear(number);
+        paid.clear(number);
+        available.clear(number);
+        if (document.categoryId != null) {
+            clear(byCategory, document.categoryId, number);
+        }
+        for (String token : document.tokens) {
+            clear(byToken, token, number);
+        }
+
+        int position = position(document);
+        System.arraycopy(byDate, position + 1, byDate, position, size - position - 1);
+        size--;
+        documents.set(number, null);
+        freeDocuments.push(number);
+    }
+
+    private static <K> void clear(Map<K, BitSet> index, K key, int number) {
+        BitSet bits = index.get(key);
+        bits.clear(number);
+        if (bits.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Позиция документа в массиве byDate: первая позиция, где документ не меньше данного.
+     */
+    private int position(Document document) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (DATE_ORDER.compare(documents.get(byDate[middle]), document) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Первая позиция в byDate с датой события не раньше date.
+     */
+    private int lowerBound(LocalDateTime date) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (documents.get(byDate[middle]).eventDate.isBefore(date)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Первая позиция в byDate с датой события позже date.
+     */
+    private int upperBound(LocalDateTime date) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (documents.get(byDate[middle]).eventDate.isAfter(date)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase())) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static class Document {
+        private final Long eventId;
+        private final Long categoryId;
+        private final LocalDateTime eventDate;
+        private long views;
+        private final Set<String> tokens;
+        private final Integer participantLimit;
+        private long confirmedRequests;
+
+        Document(Event event) {
+            this.eventId = event.getId();
+            this.categoryId = event.getCategory() == null ? null : event.getCategory().getId();
+            this.eventDate = event.getEventDate();
+            this.views = event.getViews() == null ? 0 : event.getViews();
+            this.tokens = tokenize(event.getTitle());
+            this.tokens.addAll(tokenize(event.getAnnotation()));
+            this.participantLimit = event.getParticipantLimit();
+            this.confirmedRequests = event.getConfirmedRequests() == null ? 0 : event.getConfirmedRequests();
+        }
+
+        /**
+         * Как в EventSpecifications.isOnlyAvailable: лимит не задан, равен нулю или больше числа подтверждённых заявок.
+         */
+        boolean isAvailable() {
+            return participantLimit == null || participantLimit == 0 || participantLimit > confirmedRequests;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ru.practicum.event.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Объединяет одновременные вычисления по одному ключу: первый вызов вычисляет значение,
+ * а вызовы, пришедшие до его завершения, получают тот же результат или то же исключение.
+ * Результат не запоминается: следующий вызов после завершения вычисляет значение заново.
+ * Ожидающие вызовы ждут не дольше waitTimeout, чтобы зависшее вычисление не занимало их потоки.
+ */
+class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+    private final Duration waitTimeout;
+
+    SingleFlight(Duration waitTimeout) {
+        this.waitTimeout = waitTimeout;
+    }
+
+    V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> running = calls.putIfAbsent(key, own);
+        if (running != null) {
+            return await(key, running);
+        }
+        try {
+            V value = call.get();
+            own.complete(value);
+            return value;
+        } catch (Throwable e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, own);
+        }
+    }
+
+    private V await(K key, CompletableFuture<V> running) {
+        try {
+            return running.get(waitTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Concurrent load of " + key + " did not finish in " + waitTimeout, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for concurrent load of " + key, e);
+        }
+    }
+}
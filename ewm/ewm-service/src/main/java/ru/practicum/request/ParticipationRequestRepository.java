@@ -1,21 +1,51 @@
 package ru.practicum.request;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.practicum.dto.requests.RequestStatus;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ParticipationRequestRepository extends JpaRepository<ParticipationRequest, Long> {
 
-    boolean existsByParticipantIdAndEventId(Long userId, Long eventId);
-
-    Integer countByEventId(Long eventId);
-
     long countByEventIdAndStatus(Long eventId, RequestStatus confirmed);
 
     List<ParticipationRequest> findByParticipantId(Long userId);
 
     List<ParticipationRequest> findByEventId(Long eventId);
+
+    /**
+     * Участники из participantIds, у которых уже есть заявка на событие.
+     */
+    @Query("SELECT r.participant.id FROM ParticipationRequest r " +
+            "WHERE r.event.id = :eventId AND r.participant.id IN :participantIds")
+    List<Long> findParticipantIds(@Param("eventId") Long eventId,
+                                  @Param("participantIds") Collection<Long> participantIds);
+
+    @EntityGraph(attributePaths = "participant")
+    List<ParticipationRequest> findByEventIdAndIdIn(Long eventId, Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ParticipationRequest r SET r.status = :status WHERE r.id IN :ids")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("status") RequestStatus status);
+
+    /**
+     * Самая ранняя заявка события в статусе status: на событии без модерации — первая в очереди ожидания.
+     */
+    Optional<ParticipationRequest> findFirstByEventIdAndStatusOrderByIdAsc(Long eventId, RequestStatus status);
+
+    /**
+     * Отклоняет все заявки события, ожидающие подтверждения.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ParticipationRequest r SET r.status = ru.practicum.dto.requests.RequestStatus.REJECTED " +
+            "WHERE r.event.id = :eventId AND r.status = ru.practicum.dto.requests.RequestStatus.PENDING")
+    int rejectPending(@Param("eventId") Long eventId);
 }
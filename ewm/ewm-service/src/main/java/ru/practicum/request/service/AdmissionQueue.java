@@ -0,0 +1,382 @@
+package ru.practicum.request.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.dto.event.EventState;
+import ru.practicum.dto.requests.ParticipationRequestDto;
+import ru.practicum.dto.requests.RequestStatus;
+import ru.practicum.event.Event;
+import ru.practicum.event.EventRepository;
+import ru.practicum.event.service.EventService;
+import ru.practicum.exception.ConditionNotMetException;
+import ru.practicum.exception.NotFoundException;
+import ru.practicum.request.ParticipationRequest;
+import ru.practicum.request.ParticipationRequestMapper;
+import ru.practicum.request.ParticipationRequestRepository;
+import ru.practicum.user.User;
+import ru.practicum.user.UserRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Очередь допуска заявок на популярные события, включается свойством ewm.requests.admission.enabled.
+ * Событие считается популярным, если за текущую или прошлую секунду на него пришло не меньше
+ * ewm.requests.admission.hot-threshold заявок. Заявки на такое событие не конкурируют за строку события,
+ * а попадают в одну из ewm.requests.admission.stripes очередей, выбранную по id события.
+ * Поток очереди забирает до ewm.requests.admission.batch-size заявок и решает по каждому событию пакета
+ * в одной транзакции: строка события блокируется один раз, места распределяются в памяти,
+ * заявки вставляются пачкой, а счётчик подтверждённых заявок меняется одним запросом.
+ * Если на событии без модерации мест не осталось, заявка не отклоняется, а встаёт в очередь ожидания
+ * в статусе PENDING, и в ответе возвращается её место в очереди. Место отменённой подтверждённой заявки
+ * получает первая заявка очереди ожидания, см. ParticipationRequestServiceImpl.delete.
+ */
+@Component
+@ConditionalOnProperty(name = "ewm.requests.admission.enabled", havingValue = "true")
+@Slf4j
+public class AdmissionQueue {
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final EventRepository eventRepository;
+    private final EventService eventService;
+    private final UserRepository userRepository;
+    private final ParticipationRequestRepository participationRequestRepository;
+    private final ParticipationRequestMapper participationRequestMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int hotThreshold;
+    private final int batchSize;
+    private final Duration timeout;
+    private final Duration shutdownTimeout;
+    private final List<BlockingQueue<Admission>> stripes = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final Cache<Long, RequestRate> rates = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofSeconds(10))
+            .build();
+
+    private volatile boolean running;
+
+    @Autowired
+    public AdmissionQueue(EventRepository eventRepository,
+                          EventService eventService,
+                          UserRepository userRepository,
+                          ParticipationRequestRepository participationRequestRepository,
+                          ParticipationRequestMapper participationRequestMapper,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${ewm.requests.admission.stripes:4}") int stripes,
+                          @Value("${ewm.requests.admission.hot-threshold:20}") int hotThreshold,
+                          @Value("${ewm.requests.admission.batch-size:200}") int batchSize,
+                          @Value("${ewm.requests.admission.queue-capacity:10000}") int queueCapacity,
+                          @Value("${ewm.requests.admission.timeout:5s}") Duration timeout,
+                          @Value("${ewm.requests.admission.shutdown-timeout:5s}") Duration shutdownTimeout) {
+        this.eventRepository = eventRepository;
+        this.eventService = eventService;
+        this.userRepository = userRepository;
+        this.participationRequestRepository = participationRequestRepository;
+        this.participationRequestMapper = participationRequestMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.hotThreshold = hotThreshold;
+        this.batchSize = batchSize;
+        this.timeout = timeout;
+        this.shutdownTimeout = shutdownTimeout;
+        for (int i = 0; i < stripes; i++) {
+            this.stripes.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (int i = 0; i < stripes.size(); i++) {
+            BlockingQueue<Admission> stripe = stripes.get(i);
+            Thread worker = new Thread(() -> runWorker(stripe), "admission-queue-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        for (Thread worker : workers) {
+            worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+        List<Admission> rest = new ArrayList<>();
+        stripes.forEach(stripe -> stripe.drainTo(rest));
+        if (workers.stream().noneMatch(Thread::isAlive)) {
+            // Заявки, принятые до остановки, получают решение, чтобы не оставлять запросы без ответа
+            if (!rest.isEmpty()) {
+                process(rest);
+            }
+            log.info("Admission queue stopped, {} queued requests processed on shutdown", rest.size());
+        } else {
+            // Поток очереди ещё решает пакет: решение здесь распределяло бы места события параллельно с ним,
+            // поэтому оставшиеся заявки принимаются напрямую
+            rest.forEach(Admission::release);
+            log.warn("Admission queue workers did not stop in time, {} queued requests sent to the direct path",
+                    rest.size());
+        }
+    }
+
+    /**
+     * Учитывает заявку на событие.
+     *
+     * @return true, если заявки на событие нужно принимать через очередь
+     */
+    public boolean isHot(Long eventId) {
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        return rates.get(eventId, id -> new RequestRate()).record(second) >= hotThreshold;
+    }
+
+    /**
+     * Ставит заявку в очередь события и ждёт решения. Если за ewm.requests.admission.timeout очередь
+     * не взяла заявку, заявка забирается из очереди; взятая заявка будет зафиксирована, поэтому её решение
+     * дожидается до конца.
+     *
+     * @return пустой результат, если очередь переполнена, остановлена или не успела взять заявку
+     * и заявку нужно принять напрямую
+     */
+    public Optional<ParticipationRequestDto> admit(Long userId, Long eventId) {
+        Admission admission = new Admission(userId, eventId);
+        BlockingQueue<Admission> stripe = stripes.get(Math.floorMod(eventId.hashCode(), stripes.size()));
+        if (!running || !stripe.offer(admission)) {
+            return Optional.empty();
+        }
+        if (!running && stripe.remove(admission)) {
+            // Очередь остановилась после постановки заявки и уже не обработает её
+            return Optional.empty();
+        }
+        try {
+            try {
+                return Optional.ofNullable(admission.result.get(timeout.toNanos(), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                if (stripe.remove(admission)) {
+                    return Optional.empty();
+                }
+                return Optional.ofNullable(admission.result.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for admission decision", e);
+        }
+    }
+
+    private void runWorker(BlockingQueue<Admission> stripe) {
+        List<Admission> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Admission first = stripe.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            stripe.drainTo(batch, batchSize - 1);
+            process(batch);
+            batch.clear();
+        }
+    }
+
+    private void process(List<Admission> batch) {
+        Map<Long, List<Admission>> byEvent = batch.stream()
+                .collect(Collectors.groupingBy(admission -> admission.eventId, LinkedHashMap::new, Collectors.toList()));
+        byEvent.forEach(this::admitAll);
+    }
+
+    private void admitAll(Long eventId, List<Admission> admissions) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> decide(eventId, admissions));
+        } catch (RuntimeException e) {
+            if (admissions.size() > 1) {
+                // Например, заявка того же пользователя, принятая в обход очереди: решения принимаются по одной
+                log.warn("Admission batch of {} requests to event {} failed, retrying one by one: {}",
+                        admissions.size(), eventId, e.getMessage());
+                admissions.forEach(admission -> admitAll(eventId, List.of(admission)));
+            } else {
+                admissions.get(0).result.completeExceptionally(e instanceof DataIntegrityViolationException
+                        ? new ConditionNotMetException("Participation request already exists.")
+                        : e);
+            }
+            return;
+        }
+        admissions.forEach(Admission::complete);
+    }
+
+    /**
+     * Решения по заявкам на одно событие. Проверки совпадают с прямым путём в ParticipationRequestServiceImpl.create.
+     */
+    private void decide(Long eventId, List<Admission> admissions) {
+        Event event = eventRepository.findByIdForUpdate(eventId).orElse(null);
+        if (event == null) {
+            admissions.forEach(admission ->
+                    admission.reject(new NotFoundException("Event with id=" + eventId + " was not found")));
+            return;
+        }
+        if (!event.getState().equals(EventState.PUBLISHED)) {
+            admissions.forEach(admission -> admission.reject(new ConditionNotMetException("Event is not published.")));
+            return;
+        }
+
+        List<Long> userIds = admissions.stream()
+                .map(admission -> admission.userId)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<Long, User> users = userRepository.findAllById(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        Set<Long> participants = new HashSet<>(participationRequestRepository.findParticipantIds(eventId, userIds));
+
+        boolean limited = event.getParticipantLimit() != null && event.getParticipantLimit() != 0;
+        boolean moderated = limited && event.getRequestModeration();
+        long confirmedBefore = event.getConfirmedRequests() == null ? 0 : event.getConfirmedRequests();
+        long freeSeats = limited ? Math.max(0, event.getParticipantLimit() - confirmedBefore) : Long.MAX_VALUE;
+        long confirmed = 0;
+        Long waitlisted = null;
+
+        List<ParticipationRequest> requests = new ArrayList<>();
+        List<Admission> accepted = new ArrayList<>();
+        for (Admission admission : admissions) {
+            admission.waitlistPosition = null;
+            User user = users.get(admission.userId);
+            if (user == null) {
+                admission.reject(new NotFoundException("User with id=" + admission.userId + " was not found"));
+                continue;
+            }
+            if (event.getInitiator().getId().equals(admission.userId)) {
+                admission.reject(new ConditionNotMetException("Cannot participate in your own event."));
+                continue;
+            }
+            if (!participants.add(admission.userId)) {
+                admission.reject(new ConditionNotMetException("Participation request already exists."));
+                continue;
+            }
+            if (moderated && freeSeats == 0) {
+                admission.reject(new ConditionNotMetException("Participant limit reached."));
+                continue;
+            }
+
+            ParticipationRequest request = new ParticipationRequest();
+            request.setParticipant(user);
+            request.setEvent(event);
+            request.setCreated(LocalDateTime.now());
+            if (moderated) {
+                request.setStatus(RequestStatus.PENDING);
+            } else if (freeSeats > 0) {
+                request.setStatus(RequestStatus.CONFIRMED);
+                freeSeats--;
+                confirmed++;
+            } else {
+                if (waitlisted == null) {
+                    waitlisted = participationRequestRepository.countByEventIdAndStatus(eventId, RequestStatus.PENDING);
+                }
+                request.setStatus(RequestStatus.PENDING);
+                admission.waitlistPosition = Math.toIntExact(++waitlisted);
+            }
+            requests.add(request);
+            accepted.add(admission);
+        }
+
+        participationRequestRepository.saveAll(requests);
+        eventService.addConfirmedRequests(eventId, confirmed);
+        for (int i = 0; i < requests.size(); i++) {
+            Admission admission = accepted.get(i);
+            ParticipationRequestDto dto = participationRequestMapper.toDto(requests.get(i));
+            dto.setWaitlistPosition(admission.waitlistPosition);
+            admission.accept(dto);
+        }
+    }
+
+    private static class Admission {
+        private final Long userId;
+        private final Long eventId;
+        private final CompletableFuture<ParticipationRequestDto> result = new CompletableFuture<>();
+        private ParticipationRequestDto decision;
+        private RuntimeException rejection;
+        private Integer waitlistPosition;
+
+        Admission(Long userId, Long eventId) {
+            this.userId = userId;
+            this.eventId = eventId;
+        }
+
+        void accept(ParticipationRequestDto dto) {
+            decision = dto;
+            rejection = null;
+        }
+
+        void reject(RuntimeException e) {
+            decision = null;
+            rejection = e;
+        }
+
+        /**
+         * Отпускает ожидающий запрос без решения: заявка принимается напрямую.
+         */
+        void release() {
+            result.complete(null);
+        }
+
+        /**
+         * Отдаёт решение ожидающему запросу, вызывается после фиксации транзакции.
+         */
+        void complete() {
+            if (rejection != null) {
+                result.completeExceptionally(rejection);
+            } else {
+                result.complete(decision);
+            }
+        }
+    }
+
+    /**
+     * Число заявок на событие за текущую и прошлую секунду.
+     */
+    private static class RequestRate {
+        private long second;
+        private int current;
+        private int previous;
+
+        synchronized int record(long now) {
+            if (now != second) {
+                previous = now == second + 1 ? current : 0;
+                current = 0;
+                second = now;
+            }
+            current++;
+            return Math.max(current, previous);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ru.practicum.request.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.dto.requests.RequestStatus;
+import ru.practicum.event.ConfirmedRequestsChangedEvent;
+import ru.practicum.event.Event;
+import ru.practicum.event.EventRepository;
+import ru.practicum.request.ParticipationRequestRepository;
+
+import java.util.List;
+
+/**
+ * Сверка счётчика event.confirmed_requests с числом подтверждённых заявок.
+ * Счётчик меняется в тех же транзакциях, что и статусы заявок, поэтому расходится только после
+ * изменения данных в обход сервиса. Каждое событие исправляется в своей транзакции: строка события
+ * блокируется до подсчёта заявок, так что заявки, подтверждаемые во время сверки, не теряются.
+ * Поправка публикуется как {@link ConfirmedRequestsChangedEvent}, чтобы её увидели копии счётчика в памяти.
+ * Запускается раз в ewm.requests.reconcile-interval.
+ */
+@Component
+@Slf4j
+public class ConfirmedRequestsReconciler {
+    private final EventRepository eventRepository;
+    private final ParticipationRequestRepository participationRequestRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    public ConfirmedRequestsReconciler(EventRepository eventRepository,
+                                       ParticipationRequestRepository participationRequestRepository,
+                                       PlatformTransactionManager transactionManager,
+                                       ApplicationEventPublisher eventPublisher) {
+        this.eventRepository = eventRepository;
+        this.participationRequestRepository = participationRequestRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * @return количество исправленных событий
+     */
+    @Scheduled(fixedDelayString = "${ewm.requests.reconcile-interval:PT10M}",
+            initialDelayString = "${ewm.requests.reconcile-interval:PT10M}")
+    public int reconcile() {
+        List<Long> eventIds = eventRepository.findIdsWithConfirmedRequestsDrift(RequestStatus.CONFIRMED);
+        int fixed = 0;
+        for (Long eventId : eventIds) {
+            Boolean changed = transactionTemplate.execute(status -> {
+                Event event = eventRepository.findByIdForUpdate(eventId).orElse(null);
+                if (event == null) {
+                    return false;
+                }
+                long counted = event.getConfirmedRequests() == null ? 0 : event.getConfirmedRequests();
+                long confirmed = participationRequestRepository.countByEventIdAndStatus(eventId, RequestStatus.CONFIRMED);
+                if (eventRepository.fixConfirmedRequests(eventId, confirmed) == 0) {
+                    return false;
+                }
+                eventPublisher.publishEvent(new ConfirmedRequestsChangedEvent(eventId, confirmed - counted));
+                return true;
+            });
+            if (Boolean.TRUE.equals(changed)) {
+                fixed++;
+            }
+        }
+        if (fixed > 0) {
+            log.warn("Confirmed requests counter fixed for {} events", fixed);
+        }
+        return fixed;
+    }
+}
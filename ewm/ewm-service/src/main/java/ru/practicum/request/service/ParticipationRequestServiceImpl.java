@@ -1,7 +1,11 @@
 package ru.practicum.request.service;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.practicum.dto.event.EventState;
 import ru.practicum.dto.requests.EventRequestStatusUpdateCommand;
 import ru.practicum.dto.requests.EventRequestStatusUpdateResponse;
@@ -19,7 +23,10 @@ import ru.practicum.user.service.UserService;
 
 import javax.transaction.Transactional;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
@@ -28,17 +35,39 @@ public class ParticipationRequestServiceImpl implements ParticipationRequestServ
     private final UserService userService;
     private final ParticipationRequestRepository participationRequestRepository;
     private final ParticipationRequestMapper participationRequestMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectProvider<AdmissionQueue> admissionQueue;
 
     @Autowired
-    public ParticipationRequestServiceImpl(EventService eventService, UserService userService, ParticipationRequestRepository participationRequestRepository, ParticipationRequestMapper participationRequestMapper) {
+    public ParticipationRequestServiceImpl(EventService eventService, UserService userService, ParticipationRequestRepository participationRequestRepository, ParticipationRequestMapper participationRequestMapper,
+                                           PlatformTransactionManager transactionManager,
+                                           ObjectProvider<AdmissionQueue> admissionQueue) {
         this.eventService = eventService;
         this.userService = userService;
         this.participationRequestRepository = participationRequestRepository;
         this.participationRequestMapper = participationRequestMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.admissionQueue = admissionQueue;
     }
 
+    /**
+     * Заявки на популярные события принимаются через {@link AdmissionQueue}, если она включена,
+     * остальные — напрямую в транзакции запроса. Ожидание решения очереди не держит соединение с базой.
+     * Пока очередь включена, оба пути ставят заявку на заполненное событие без модерации в очередь ожидания.
+     */
     @Override
     public ParticipationRequestDto create(Long userId, Long eventId) {
+        AdmissionQueue queue = admissionQueue.getIfAvailable();
+        if (queue != null && queue.isHot(eventId)) {
+            Optional<ParticipationRequestDto> admitted = queue.admit(userId, eventId);
+            if (admitted.isPresent()) {
+                return admitted.get();
+            }
+        }
+        return transactionTemplate.execute(status -> createDirectly(userId, eventId, queue != null));
+    }
+
+    private ParticipationRequestDto createDirectly(Long userId, Long eventId, boolean waitlist) {
         User user = userService.getEntityById(userId);
         Event event = eventService.getEntityById(eventId);
 
@@ -50,12 +79,11 @@ public class ParticipationRequestServiceImpl implements ParticipationRequestServ
             throw new ConditionNotMetException("Cannot participate in your own event.");
         }
 
-        if (participationRequestRepository.existsByParticipantIdAndEventId(userId, eventId)) {
-            throw new ConditionNotMetException("Participation request already exists.");
-        }
-
-        if (event.getParticipantLimit() != null && event.getParticipantLimit() != 0 &&
-                participationRequestRepository.countByEventId(eventId) >= event.getParticipantLimit()) {
+        boolean limited = event.getParticipantLimit() != null && event.getParticipantLimit() != 0;
+        boolean confirmed = !event.getRequestModeration() || !limited;
+        // Заявке на модерацию место достанется только при подтверждении, здесь достаточно прочитанного счётчика
+        if (limited && !confirmed && event.getConfirmedRequests() != null
+                && event.getConfirmedRequests() >= event.getParticipantLimit()) {
             throw new ConditionNotMetException("Participant limit reached.");
         }
 
@@ -63,53 +91,106 @@ public class ParticipationRequestServiceImpl implements ParticipationRequestServ
         participationRequest.setParticipant(user);
         participationRequest.setEvent(event);
         participationRequest.setCreated(LocalDateTime.now());
+        participationRequest.setStatus(confirmed ? RequestStatus.CONFIRMED : RequestStatus.PENDING);
 
-        if (!event.getRequestModeration() || event.getParticipantLimit() == 0) {
-            participationRequest.setStatus(RequestStatus.CONFIRMED);
-        } else {
-            participationRequest.setStatus(RequestStatus.PENDING);
+        ParticipationRequest saved;
+        try {
+            // Повторную заявку отклоняет уникальный индекс (event_id, participant_id) без отдельной проверки
+            saved = participationRequestRepository.save(participationRequest);
+        } catch (DataIntegrityViolationException e) {
+            throw new ConditionNotMetException("Participation request already exists.");
         }
 
-        return participationRequestMapper.toDto(participationRequestRepository.save(participationRequest));
+        if (confirmed && !limited) {
+            eventService.addConfirmedRequests(eventId, 1);
+        } else if (confirmed && !eventService.reserveSeat(eventId)) {
+            // Заявка без модерации сразу занимает место, лимит проверяется атомарно вместе со счётчиком.
+            // Откат транзакции удалит и уже вставленную заявку
+            if (!waitlist) {
+                throw new ConditionNotMetException("Participant limit reached.");
+            }
+            return addToWaitlist(saved);
+        }
+
+        return participationRequestMapper.toDto(saved);
+    }
+
+    /**
+     * Ставит заявку в очередь ожидания, как AdmissionQueue: место считается под блокировкой строки события,
+     * поэтому места не повторяются и идут подряд.
+     */
+    private ParticipationRequestDto addToWaitlist(ParticipationRequest request) {
+        Long eventId = request.getEvent().getId();
+        eventService.getEntityByIdForUpdate(eventId);
+        request.setStatus(RequestStatus.PENDING);
+        participationRequestRepository.flush();
+        ParticipationRequestDto dto = participationRequestMapper.toDto(request);
+        dto.setWaitlistPosition(Math.toIntExact(
+                participationRequestRepository.countByEventIdAndStatus(eventId, RequestStatus.PENDING)));
+        return dto;
     }
 
     @Override
     @Transactional
     public EventRequestStatusUpdateResponse updateStatus(Long userId, Long eventId, EventRequestStatusUpdateCommand updateRequest) {
-        Event event = eventService.getEntityById(eventId);
+        // Строка события блокируется до конца транзакции: счётчик подтверждённых заявок читается один раз
+        // и не меняется параллельными заявками, пока места распределяются в памяти
+        Event event = eventService.getEntityByIdForUpdate(eventId);
 
         if (!event.getInitiator().getId().equals(userId)) {
             throw new ConditionNotMetException("Only event initiator can update request status.");
         }
 
+        List<Long> requestIds = updateRequest.getRequestIds();
+        List<ParticipationRequest> requestsToUpdate = requestIds == null || requestIds.isEmpty()
+                ? new ArrayList<>()
+                : participationRequestRepository.findByEventIdAndIdIn(eventId, requestIds);
+        if (requestsToUpdate.stream().anyMatch(request -> !request.getStatus().equals(RequestStatus.PENDING))) {
+            throw new ConditionNotMetException("Only requests in pending status can be updated.");
+        }
+        requestsToUpdate.sort(Comparator.comparing(ParticipationRequest::getId));
+
+        // Ожидающие заявки на событии без модерации — это очередь ожидания AdmissionQueue,
+        // поэтому лимит соблюдается независимо от модерации
         Integer limit = event.getParticipantLimit();
-        List<ParticipationRequest> requestsToUpdate = participationRequestRepository.findAllById(updateRequest.getRequestIds());
-        boolean noLimitOrModeration = limit == null || limit == 0 || !event.getRequestModeration();
+        boolean unlimited = limit == null || limit == 0;
+        long confirmedBefore = event.getConfirmedRequests() == null ? 0 : event.getConfirmedRequests();
+        long freeSeats;
+        if (!updateRequest.getStatus().equals(RequestStatus.CONFIRMED)) {
+            freeSeats = 0;
+        } else if (unlimited) {
+            freeSeats = requestsToUpdate.size();
+        } else {
+            freeSeats = Math.max(0, limit - confirmedBefore);
+        }
 
+        // Сущности не меняются, статусы записываются запросами ниже, а ответ строится из DTO
+        List<ParticipationRequestDto> confirmedRequests = new ArrayList<>();
+        List<ParticipationRequestDto> rejectedRequests = new ArrayList<>();
         for (ParticipationRequest request : requestsToUpdate) {
-            if (!request.getStatus().equals(RequestStatus.PENDING)) {
-                throw new ConditionNotMetException("Only requests in pending status can be updated.");
-            }
-            if (noLimitOrModeration) {
-                request.setStatus(RequestStatus.CONFIRMED);
-            } else if (updateRequest.getStatus().equals(RequestStatus.CONFIRMED) && participationRequestRepository.countByEventIdAndStatus(eventId, RequestStatus.CONFIRMED) < limit) {
-                request.setStatus(updateRequest.getStatus());
+            ParticipationRequestDto dto = participationRequestMapper.toDto(request);
+            if (confirmedRequests.size() < freeSeats) {
+                dto.setStatus(RequestStatus.CONFIRMED);
+                confirmedRequests.add(dto);
             } else {
-                request.setStatus(RequestStatus.REJECTED);
+                dto.setStatus(RequestStatus.REJECTED);
+                rejectedRequests.add(dto);
             }
         }
 
-        participationRequestRepository.saveAll(requestsToUpdate);
-
-        List<ParticipationRequestDto> confirmedRequests = requestsToUpdate.stream()
-                .filter(request -> request.getStatus().equals(RequestStatus.CONFIRMED))
-                .map(participationRequestMapper::toDto)
-                .collect(Collectors.toList());
-
-        List<ParticipationRequestDto> rejectedRequests = requestsToUpdate.stream()
-                .filter(request -> request.getStatus().equals(RequestStatus.REJECTED))
-                .map(participationRequestMapper::toDto)
-                .collect(Collectors.toList());
+        if (!confirmedRequests.isEmpty()) {
+            participationRequestRepository.updateStatus(ids(confirmedRequests), RequestStatus.CONFIRMED);
+            eventService.addConfirmedRequests(eventId, confirmedRequests.size());
+        }
+        boolean limitReached = !unlimited && !confirmedRequests.isEmpty()
+                && confirmedBefore + confirmedRequests.size() >= limit;
+        if (limitReached && event.getRequestModeration()) {
+            // Лимит исчерпан: отклоняются все оставшиеся заявки события, включая отклонённые в этой команде.
+            // Очередь ожидания события без модерации сохраняется: место отменённой заявки переходит к ней, см. delete
+            participationRequestRepository.rejectPending(eventId);
+        } else if (!rejectedRequests.isEmpty()) {
+            participationRequestRepository.updateStatus(ids(rejectedRequests), RequestStatus.REJECTED);
+        }
 
         EventRequestStatusUpdateResponse result = new EventRequestStatusUpdateResponse();
         result.setConfirmedRequests(confirmedRequests);
@@ -118,18 +199,45 @@ public class ParticipationRequestServiceImpl implements ParticipationRequestServ
         return result;
     }
 
+    /**
+     * Место отменённой подтверждённой заявки на событии без модерации в той же транзакции получает
+     * первая заявка очереди ожидания, и счётчик подтверждённых заявок не меняется.
+     */
     @Override
+    @Transactional
     public ParticipationRequestDto delete(Long userId, Long requestId) {
         ParticipationRequest request = getEntityById(requestId);
 
         if (!request.getParticipant().getId().equals(userId)) {
             throw new ConditionNotMetException("Request does not belong to user.");
         }
+        if (request.getStatus().equals(RequestStatus.CONFIRMED) && !promoteFromWaitlist(request.getEvent())) {
+            eventService.addConfirmedRequests(request.getEvent().getId(), -1);
+        }
         request.setStatus(RequestStatus.CANCELED);
         participationRequestRepository.delete(request);
         return participationRequestMapper.toDto(request);
     }
 
+    /**
+     * Подтверждает первую заявку очереди ожидания события без модерации.
+     * Строка события блокируется, как при постановке в очередь, чтобы заявка не появилась в очереди одновременно.
+     *
+     * @return true, если заявка из очереди заняла место
+     */
+    private boolean promoteFromWaitlist(Event event) {
+        boolean limited = event.getParticipantLimit() != null && event.getParticipantLimit() != 0;
+        if (!limited || event.getRequestModeration()) {
+            return false;
+        }
+        eventService.getEntityByIdForUpdate(event.getId());
+        Optional<ParticipationRequest> head = participationRequestRepository
+                .findFirstByEventIdAndStatusOrderByIdAsc(event.getId(), RequestStatus.PENDING);
+        head.ifPresent(waiting -> participationRequestRepository.updateStatus(List.of(waiting.getId()),
+                RequestStatus.CONFIRMED));
+        return head.isPresent();
+    }
+
     @Override
     public ParticipationRequest getEntityById(Long requestId) {
         return participationRequestRepository.findById(requestId)
@@ -157,6 +265,10 @@ public class ParticipationRequestServiceImpl implements ParticipationRequestServ
                 .map(participationRequestMapper::toDto)
                 .collect(Collectors.toList());
     }
-}
-
 
+    private static List<Long> ids(List<ParticipationRequestDto> requests) {
+        return requests.stream()
+                .map(ParticipationRequestDto::getId)
+                .collect(Collectors.toList());
+    }
+}
@@ -1,7 +1,7 @@
 package ru.practicum.user;
 
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -12,5 +12,7 @@ import java.util.List;
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     @Query("SELECT u FROM User u WHERE u.id IN :ids")
-    Page<User> findByIds(@Param("ids") List<Long> ids, Pageable pageable);
+    Slice<User> findByIds(@Param("ids") List<Long> ids, Pageable pageable);
+
+    Slice<User> findAllBy(Pageable pageable);
 }
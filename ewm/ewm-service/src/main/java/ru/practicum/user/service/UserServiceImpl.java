@@ -1,8 +1,8 @@
 package ru.practicum.user.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.dto.user.NewUserDto;
@@ -37,10 +37,8 @@ public class UserServiceImpl implements UserService {
     @Override
     @Transactional
     public void delete(Long userId) {
-        if (!userRepository.existsById(userId))
-            throw new NotFoundException("User with id=" + userId + " was not found");
-
-        userRepository.deleteById(userId);
+        // Пользователь читается из кэша второго уровня, а не проверяется отдельным запросом
+        userRepository.delete(getEntityById(userId));
     }
 
     @Override
@@ -52,10 +50,10 @@ public class UserServiceImpl implements UserService {
     @Override
     public List<UserDto> getAll(List<Long> userIds, int offset, int limit) {
         PageRequest pageRequest = PageRequest.of(offset / limit, limit);
-        Page<User> users;
+        Slice<User> users;
 
         if (userIds.isEmpty()) {
-            users = userRepository.findAll(pageRequest);
+            users = userRepository.findAllBy(pageRequest);
         } else {
             users = userRepository.findByIds(userIds, pageRequest);
         }
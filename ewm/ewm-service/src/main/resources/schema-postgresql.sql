@@ -0,0 +1,6 @@
+-- Индекс полнотекстового поиска по событиям, выражение совпадает с EwmPostgreSQLDialect
+CREATE INDEX IF NOT EXISTS ix_event_text_search ON event USING GIN (
+    (setweight(to_tsvector('simple', coalesce(title, '')), 'A')
+        || setweight(to_tsvector('simple', coalesce(annotation, '')), 'B')
+        || setweight(to_tsvector('simple', coalesce(description, '')), 'C'))
+);
@@ -42,7 +42,7 @@ CREATE TABLE IF NOT EXISTS event
     request_moderation BOOLEAN,
     state              VARCHAR(50),
     title              VARCHAR(255),
-    views              BIGINT,
+    views              BIGINT DEFAULT 0 NOT NULL,
     CONSTRAINT pk_event PRIMARY KEY (id),
     CONSTRAINT fk_e_category_id FOREIGN KEY (category_id) REFERENCES category (id),
     CONSTRAINT fk_e_initiator_id FOREIGN KEY (initiator_id) REFERENCES users (id)
@@ -68,4 +68,17 @@ CREATE TABLE IF NOT EXISTS events_participation
     CONSTRAINT pk_events_participation PRIMARY KEY (id),
     CONSTRAINT fk_ep_event_id FOREIGN KEY (event_id) REFERENCES event (id),
     CONSTRAINT fk_ep_participant_id FOREIGN KEY (participant_id) REFERENCES users (id)
-);
\ No newline at end of file
+);
+
+-- Повторная заявка пользователя на событие отклоняется индексом, а не проверкой перед вставкой
+CREATE UNIQUE INDEX IF NOT EXISTS ux_events_participation_event_participant
+    ON events_participation (event_id, participant_id);
+CREATE INDEX IF NOT EXISTS ix_events_participation_event_status ON events_participation (event_id, status);
+CREATE INDEX IF NOT EXISTS ix_events_participation_participant ON events_participation (participant_id);
+
+-- Публичный поиск с сортировкой по просмотрам читает опубликованные события в порядке индекса.
+-- Просмотры не бывают NULL, иначе такие события выпадали бы из выдачи с продолжением
+UPDATE event SET views = 0 WHERE views IS NULL;
+ALTER TABLE event ALTER COLUMN views SET DEFAULT 0;
+ALTER TABLE event ALTER COLUMN views SET NOT NULL;
+CREATE INDEX IF NOT EXISTS ix_event_state_views ON event (state, views DESC, id);
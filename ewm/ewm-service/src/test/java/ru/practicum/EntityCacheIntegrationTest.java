@@ -0,0 +1,143 @@
+package ru.practicum;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.practicum.category.Category;
+import ru.practicum.category.CategoryRepository;
+import ru.practicum.category.service.CategoryService;
+import ru.practicum.dto.category.NewCategoryDto;
+import ru.practicum.dto.category.UpdateCategoryDto;
+import ru.practicum.dto.user.NewUserDto;
+import ru.practicum.exception.NotFoundException;
+import ru.practicum.user.User;
+import ru.practicum.user.UserRepository;
+import ru.practicum.user.service.UserService;
+
+import javax.cache.CacheManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Кэш второго уровня заполняется только после фиксации транзакции, поэтому тест не транзакционный
+ * и удаляет созданные данные сам.
+ */
+@SpringBootTest
+public class EntityCacheIntegrationTest {
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private CacheManager entityCacheManager;
+
+    private final List<Long> categoryIds = new ArrayList<>();
+    private final List<Long> userIds = new ArrayList<>();
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        statistics.setStatisticsEnabled(false);
+        categoryRepository.deleteAllByIdInBatch(categoryIds);
+        userRepository.deleteAllByIdInBatch(userIds);
+    }
+
+    @Test
+    public void testCategoryIsReadFromCacheUntilChanged() {
+        Long categoryId = categoryService.create(new NewCategoryDto("Cached")).getId();
+        categoryIds.add(categoryId);
+        categoryService.getEntityById(categoryId);
+        double hits = hits(Category.CACHE_REGION);
+
+        statistics.clear();
+        for (int i = 0; i < 3; i++) {
+            assertThat(categoryService.getEntityById(categoryId).getName()).isEqualTo("Cached");
+        }
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(hits(Category.CACHE_REGION)).isEqualTo(hits + 3);
+
+        categoryService.update(categoryId, new UpdateCategoryDto("Renamed"));
+        statistics.clear();
+        assertThat(categoryService.getEntityById(categoryId).getName()).isEqualTo("Renamed");
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+
+        categoryService.delete(categoryId);
+        assertThrows(NotFoundException.class, () -> categoryService.getEntityById(categoryId));
+    }
+
+    @Test
+    public void testUserIsReadFromCacheUntilDeleted() {
+        Long userId = userService.create(new NewUserDto("cached@bobs.ru", "MR.CACHED")).getId();
+        userIds.add(userId);
+        userService.getEntityById(userId);
+        double misses = misses(User.CACHE_REGION);
+
+        statistics.clear();
+        for (int i = 0; i < 3; i++) {
+            assertThat(userService.getEntityById(userId).getEmail()).isEqualTo("cached@bobs.ru");
+        }
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(misses(User.CACHE_REGION)).isEqualTo(misses);
+
+        userService.delete(userId);
+        assertThrows(NotFoundException.class, () -> userService.getEntityById(userId));
+    }
+
+    @Test
+    public void testEachContextGetsOwnCacheManager() {
+        CacheManager other = new EntityCacheConfig().entityCacheManager(new SimpleMeterRegistry(),
+                Duration.ofSeconds(1), 1, Duration.ofSeconds(1), 1);
+        try {
+            assertThat(other).isNotSameAs(entityCacheManager);
+            assertThat(other.getCache(Category.CACHE_REGION).getConfiguration(CaffeineConfiguration.class)
+                    .getMaximumSize()).hasValue(1);
+            assertThat(entityCacheManager.getCache(Category.CACHE_REGION).getConfiguration(CaffeineConfiguration.class)
+                    .getMaximumSize()).hasValue(1000);
+        } finally {
+            other.close();
+        }
+        assertThat(entityCacheManager.isClosed()).isFalse();
+        assertThat(entityCacheManager.getCache(User.CACHE_REGION)).isNotNull();
+    }
+
+    private double hits(String region) {
+        return meterRegistry.get("cache.gets").tags("cache", region, "result", "hit").functionCounter().count();
+    }
+
+    private double misses(String region) {
+        return meterRegistry.get("cache.gets").tags("cache", region, "result", "miss").functionCounter().count();
+    }
+}
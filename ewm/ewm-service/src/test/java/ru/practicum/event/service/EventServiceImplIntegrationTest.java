@@ -1,5 +1,8 @@
 package ru.practicum.event.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -7,7 +10,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Mono;
 import ru.practicum.StatisticClient;
 import ru.practicum.category.service.CategoryService;
 import ru.practicum.dto.category.NewCategoryDto;
@@ -19,19 +26,41 @@ import ru.practicum.dto.event.NewEventDto;
 import ru.practicum.dto.event.admin.AdminAction;
 import ru.practicum.dto.event.admin.AdminUpdateEventRequest;
 import ru.practicum.dto.event.user.UserUpdateEventRequest;
+import ru.practicum.dto.requests.RequestStatus;
+import ru.practicum.dto.statistics.ViewStatsDto;
 import ru.practicum.dto.user.NewUserDto;
+import ru.practicum.event.ConfirmedRequestsChangedEvent;
+import ru.practicum.event.CursorPage;
 import ru.practicum.event.Event;
+import ru.practicum.event.EventCursor;
 import ru.practicum.event.EventMapper;
 import ru.practicum.event.EventRepository;
+import ru.practicum.event.EventShortView;
+import ru.practicum.event.EventSpecifications;
 import ru.practicum.exception.ConditionNotMetException;
+import ru.practicum.request.ParticipationRequest;
+import ru.practicum.request.ParticipationRequestRepository;
+import ru.practicum.request.service.ConfirmedRequestsReconciler;
+import ru.practicum.user.User;
 import ru.practicum.user.service.UserService;
 
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.validation.ValidationException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.*;
 
@@ -39,6 +68,7 @@ import static org.mockito.ArgumentMatchers.*;
 @SpringBootTest
 @Transactional
 @AutoConfigureMockMvc
+@RecordApplicationEvents
 public class EventServiceImplIntegrationTest {
 
     @Autowired
@@ -56,6 +86,27 @@ public class EventServiceImplIntegrationTest {
     @Autowired
     private EventMapper eventMapper;
 
+    @Autowired
+    private ParticipationRequestRepository participationRequestRepository;
+
+    @Autowired
+    private ConfirmedRequestsReconciler confirmedRequestsReconciler;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EventViewsSynchronizer eventViewsSynchronizer;
+
+    @Autowired
+    private ApplicationEvents applicationEvents;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @MockBean
     StatisticClient statisticClient;
 
@@ -77,8 +128,8 @@ public class EventServiceImplIntegrationTest {
         newEventDto.setTitle("Test Event 2");
         eventService.create(userId, newEventDto);
 
-        Mockito.when(statisticClient.getStatistics(any(LocalDateTime.class), any(LocalDateTime.class),
-                anyList(), anyBoolean())).thenReturn(Collections.emptyList());
+        Mockito.when(statisticClient.getStatisticsAsync(any(LocalDateTime.class), any(LocalDateTime.class),
+                anyList(), anyBoolean())).thenReturn(Mono.just(Collections.emptyList()));
     }
 
     @Test
@@ -187,4 +238,315 @@ public class EventServiceImplIntegrationTest {
         assertThat(events).isNotEmpty();
         assertThat(events.size()).isGreaterThan(0); // Ожидаем, что хотя бы одно событие будет возвращено
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetAllFetchesViewsOncePerPage() {
+        AdminUpdateEventRequest publish = new AdminUpdateEventRequest();
+        publish.setStateAction(AdminAction.PUBLISH_EVENT);
+        newEventDto.setTitle("Viewed Event");
+        Long firstId = eventService.create(userId, newEventDto).getId();
+        Long secondId = eventService.create(userId, newEventDto).getId();
+        eventService.update(firstId, publish);
+        eventService.update(secondId, publish);
+        Mockito.when(statisticClient.getViews(anyCollection(), any(LocalDateTime.class)))
+                .thenReturn(Map.of(firstId, 7L, secondId, 3L));
+
+        for (int i = 0; i < 2; i++) {
+            List<EventShortDto> events = eventService.getAll("Viewed", null, null, null, null, null,
+                    EventSortOption.EVENT_DATE, 0, 10);
+
+            assertThat(events).extracting(EventShortDto::getId, EventShortDto::getViews)
+                    .containsExactlyInAnyOrder(tuple(firstId, 7L), tuple(secondId, 3L));
+        }
+        Mockito.verify(statisticClient, Mockito.times(1)).getViews(anyCollection(), any(LocalDateTime.class));
+    }
+
+    @Test
+    public void testGetAllStatementCountDoesNotDependOnPageSize() {
+        List<User> participants = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            participants.add(userService.getEntityById(userService.create(new NewUserDto("user" + i + "@mail.ru", "User " + i)).getId()));
+        }
+        for (int i = 0; i < 8; i++) {
+            Event event = eventService.getEntityById(eventService.create(userId, newEventDto).getId());
+            for (int j = 0; j <= i % 3; j++) {
+                ParticipationRequest request = new ParticipationRequest();
+                request.setEvent(event);
+                request.setParticipant(participants.get(j));
+                request.setStatus(j == 2 ? RequestStatus.PENDING : RequestStatus.CONFIRMED);
+                request.setCreated(LocalDateTime.now());
+                participationRequestRepository.save(request);
+            }
+        }
+        participationRequestRepository.flush();
+        // Заявки сохранены в обход сервиса, счётчики событий исправляет сверка
+        assertThat(confirmedRequestsReconciler.reconcile()).isEqualTo(8);
+        // Поправки публикуются, чтобы копии счётчика в памяти тоже исправились
+        assertThat(applicationEvents.stream(ConfirmedRequestsChangedEvent.class)
+                .mapToLong(ConfirmedRequestsChangedEvent::getDelta).sum())
+                .isEqualTo(participationRequestRepository.findAll().stream()
+                        .filter(request -> request.getStatus() == RequestStatus.CONFIRMED).count());
+        entityManager.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            statistics.clear();
+            eventService.getAll(List.of(userId), null, null, null, null, 0, 2);
+            long smallPage = statistics.getPrepareStatementCount();
+
+            statistics.clear();
+            List<EventDto> events = eventService.getAll(List.of(userId), null, null, null, null, 0, 8);
+            long largePage = statistics.getPrepareStatementCount();
+
+            assertThat(largePage).isEqualTo(smallPage);
+            assertThat(events).hasSize(8);
+            for (EventDto event : events) {
+                long expected = participationRequestRepository.countByEventIdAndStatus(event.getId(), RequestStatus.CONFIRMED);
+                assertThat(event.getConfirmedRequests()).isEqualTo(expected);
+            }
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    @Test
+    public void testListQueriesLoadCategoryAndInitiatorWithEvents() {
+        List<Long> initiators = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Long initiatorId = userService.create(new NewUserDto("initiator" + i + "@mail.ru", "Initiator " + i)).getId();
+            newEventDto.setCategory(categoryService.create(new NewCategoryDto("Category " + i)).getId());
+            eventService.create(initiatorId, newEventDto);
+            initiators.add(initiatorId);
+        }
+        eventRepository.flush();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            long[] counts = new long[2];
+            int[] sizes = {1, 6};
+            for (int i = 0; i < sizes.length; i++) {
+                // Пустой контекст, чтобы категории и пользователи не брались из кеша первого уровня
+                entityManager.clear();
+                statistics.clear();
+                List<EventDto> events = eventService.getAll(initiators, null, null, null, null, 0, sizes[i]);
+                counts[i] = statistics.getPrepareStatementCount();
+
+                assertThat(events).hasSize(sizes[i]);
+                assertThat(events).allSatisfy(event -> {
+                    assertThat(event.getCategory().getName()).startsWith("Category ");
+                    assertThat(event.getInitiator().getName()).startsWith("Initiator ");
+                });
+            }
+            assertThat(counts[1]).isEqualTo(counts[0]);
+
+            entityManager.clear();
+            statistics.clear();
+            List<EventShortDto> own = eventService.getByUserId(initiators.get(0), 0, 10);
+            assertThat(own).hasSize(1);
+            assertThat(own.get(0).getCategory().getName()).isEqualTo("Category 0");
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    @Test
+    public void testShortViewsMatchEntityMapping() {
+        newEventDto.setAnnotation("Short annotation");
+        newEventDto.setDescription("x".repeat(10000));
+        newEventDto.setPaid(true);
+        eventService.create(userId, newEventDto);
+        // Сравниваются значения из базы: H2 хранит время с точностью до микросекунд
+        entityManager.flush();
+        entityManager.clear();
+
+        List<EventShortDto> expected = eventRepository.findAll().stream()
+                .filter(event -> event.getInitiator().getId().equals(userId))
+                .map(eventMapper::toShortDto)
+                .collect(Collectors.toList());
+        List<EventShortDto> events = eventService.getByUserId(userId, 0, 10);
+
+        assertThat(events).hasSize(expected.size());
+        assertThat(events).usingRecursiveFieldByFieldElementComparator().containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(events).extracting(event -> event.getCategory().getName()).containsOnly("Pizza");
+        assertThat(events).extracting(event -> event.getInitiator().getName()).containsOnly("MR.BOBS");
+    }
+
+    @Test
+    public void testCursorPagesCoverAllEventsWithoutCount() {
+        for (int i = 0; i < 5; i++) {
+            eventService.create(userId, newEventDto);
+        }
+        // Позиция продолжения строится по значениям из базы: H2 хранит время с точностью до микросекунд
+        entityManager.flush();
+        entityManager.clear();
+        List<Long> expected = eventRepository.findAll().stream()
+                .filter(event -> event.getInitiator().getId().equals(userId))
+                .sorted(Comparator.comparing(Event::getEventDate).thenComparing(Event::getId))
+                .map(Event::getId)
+                .collect(Collectors.toList());
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            List<Long> adminIds = new ArrayList<>();
+            String cursor = "";
+            int pages = 0;
+            do {
+                assertThat(++pages).isLessThanOrEqualTo(expected.size());
+                statistics.clear();
+                CursorPage<EventDto> page = eventService.getAllByCursor(List.of(userId), null, null, null, null, cursor, 3);
+                // Только страница: подтверждённые заявки хранятся в событии, количество не запрашивается
+                assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+                page.getContent().forEach(event -> adminIds.add(event.getId()));
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+            assertThat(adminIds).isEqualTo(expected);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+
+        List<Long> publicIds = new ArrayList<>();
+        String cursor = "";
+        int pages = 0;
+        do {
+            assertThat(++pages).isLessThanOrEqualTo(expected.size());
+            CursorPage<EventShortDto> page = eventService.getAllByCursor("Test", null, null, null, null, null,
+                    EventSortOption.VIEWS, cursor, 2);
+            page.getContent().forEach(event -> publicIds.add(event.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertThat(publicIds).containsExactlyElementsOf(expected.stream().sorted().collect(Collectors.toList()));
+
+        String eventDateCursor = EventCursor.afterEventDate(LocalDateTime.now(), 1L).encode();
+        assertThrows(ValidationException.class, () -> eventService.getAllByCursor("Test", null, null, null, null, null,
+                EventSortOption.VIEWS, eventDateCursor, 2));
+        assertThrows(ValidationException.class, () -> eventService.getAllByCursor(List.of(userId), null, null, null, null,
+                "not a cursor", 2));
+    }
+
+    @Test
+    public void testTextSearchMatchesAndRanksByField() {
+        newEventDto.setTitle("Evening of jazz");
+        newEventDto.setAnnotation("Live music");
+        newEventDto.setDescription("Bring your friends");
+        Long titleMatch = eventService.create(userId, newEventDto).getId();
+        newEventDto.setTitle("Open air");
+        newEventDto.setAnnotation("Live music");
+        newEventDto.setDescription("Jazz and blues until midnight");
+        Long descriptionMatch = eventService.create(userId, newEventDto).getId();
+        newEventDto.setTitle("Rock night");
+        newEventDto.setDescription("Guitars");
+        eventService.create(userId, newEventDto);
+
+        List<EventShortView> ranked = eventRepository.findShortViews(EventSpecifications.matchesText("JAZZ", true),
+                PageRequest.of(0, 10)).getContent();
+        assertThat(ranked).extracting(EventShortView::getId).containsExactly(titleMatch, descriptionMatch);
+
+        List<EventShortDto> events = eventService.getAll("jazz", null, null, null, null, null,
+                EventSortOption.EVENT_DATE, 0, 10);
+        assertThat(events).extracting(EventShortDto::getId).containsExactlyInAnyOrder(titleMatch, descriptionMatch);
+    }
+
+    @Test
+    public void testViewsSyncUpdatesOnlyViewedEvents() {
+        AdminUpdateEventRequest publish = new AdminUpdateEventRequest();
+        publish.setStateAction(AdminAction.PUBLISH_EVENT);
+        newEventDto.setTitle("Synced Event");
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Long id = eventService.create(userId, newEventDto).getId();
+            eventService.update(id, publish);
+            ids.add(id);
+        }
+        Long first = ids.get(0);
+        Long second = ids.get(1);
+        Long third = ids.get(2);
+        Map<Long, Long> uniqueViews = new HashMap<>(Map.of(first, 5L, second, 9L, third, 2L));
+        Mockito.when(statisticClient.getViews(anyCollection(), any(LocalDateTime.class))).thenAnswer(invocation -> {
+            Map<Long, Long> views = new HashMap<>();
+            invocation.<Collection<Long>>getArgument(0).forEach(id -> views.put(id, uniqueViews.getOrDefault(id, 0L)));
+            return views;
+        });
+        Mockito.when(statisticClient.getStatistics(any(LocalDateTime.class), any(LocalDateTime.class), isNull(), eq(false)))
+                .thenReturn(List.of(new ViewStatsDto("ewm-service", "/events", 20L),
+                        new ViewStatsDto("ewm-service", "/events/" + first, 12L),
+                        new ViewStatsDto("ewm-service", "/events/" + second, 10L)));
+
+        // Первый запуск после старта обходит все опубликованные события, второй — только просмотренные
+        eventViewsSynchronizer.synchronize();
+        eventViewsSynchronizer.synchronize();
+        entityManager.clear();
+        assertThat(eventRepository.findById(first).orElseThrow().getViews()).isEqualTo(5L);
+        assertThat(eventRepository.findById(second).orElseThrow().getViews()).isEqualTo(9L);
+
+        Long thirdViews = eventRepository.findById(third).orElseThrow().getViews();
+        uniqueViews.put(first, 6L);
+        uniqueViews.put(third, 42L);
+        Mockito.when(statisticClient.getStatistics(any(LocalDateTime.class), any(LocalDateTime.class), isNull(), eq(false)))
+                .thenReturn(List.of(new ViewStatsDto("ewm-service", "/events/" + first, 1L)));
+        Mockito.clearInvocations(statisticClient);
+
+        assertThat(eventViewsSynchronizer.synchronize()).isEqualTo(1);
+        Mockito.verify(statisticClient).getViews(eq(List.of(first)), any(LocalDateTime.class));
+        entityManager.clear();
+        assertThat(eventRepository.findById(first).orElseThrow().getViews()).isEqualTo(6L);
+        assertThat(eventRepository.findById(third).orElseThrow().getViews()).isEqualTo(thirdViews);
+
+        List<EventShortDto> events = eventService.getAll("Synced", null, null, null, null, null,
+                EventSortOption.VIEWS, 0, 10);
+        assertThat(events).extracting(EventShortDto::getId).containsExactly(second, first, third);
+        assertThat(eventViewsSynchronizer.isStale()).isFalse();
+    }
+
+    @Test
+    public void testViewsSyncFailureIsCounted() {
+        Mockito.when(statisticClient.getStatistics(any(LocalDateTime.class), any(LocalDateTime.class), isNull(), eq(false)))
+                .thenThrow(new IllegalStateException("Stats server is down"));
+        Mockito.when(statisticClient.getViews(anyCollection(), any()))
+                .thenThrow(new IllegalStateException("Stats server is down"));
+        AdminUpdateEventRequest publish = new AdminUpdateEventRequest();
+        publish.setStateAction(AdminAction.PUBLISH_EVENT);
+        eventService.update(eventService.create(userId, newEventDto).getId(), publish);
+        double failures = meterRegistry.get("ewm.views.sync.failures").counter().count();
+
+        assertThat(eventViewsSynchronizer.synchronize()).isZero();
+        assertThat(meterRegistry.get("ewm.views.sync.failures").counter().count()).isEqualTo(failures + 1);
+        assertThat(meterRegistry.get("ewm.views.sync.staleness").gauge().value()).isGreaterThanOrEqualTo(0);
+    }
+
+    @Test
+    public void testGetByIdFallsBackToLastKnownViewsAfterStatsDeadline() {
+        Long eventId = eventService.create(userId, newEventDto).getId();
+        AdminUpdateEventRequest publish = new AdminUpdateEventRequest();
+        publish.setStateAction(AdminAction.PUBLISH_EVENT);
+        eventService.update(eventId, publish);
+        eventRepository.updateViews(Map.of(eventId, 7L));
+        entityManager.clear();
+        double deadlines = meterRegistry.get("ewm.events.views.fallback").tag("reason", "deadline").counter().count();
+        double errors = meterRegistry.get("ewm.events.views.fallback").tag("reason", "error").counter().count();
+
+        Mockito.when(statisticClient.getStatisticsAsync(any(LocalDateTime.class), any(LocalDateTime.class),
+                anyList(), anyBoolean())).thenReturn(Mono.just(List.of(new ViewStatsDto("ewm-service", "/events/" + eventId, 11L))));
+        assertThat(eventService.getById(eventId).getViews()).isEqualTo(11L);
+
+        // Сервис статистики не отвечает: событие отдаётся по истечении срока с последним известным значением
+        Mockito.when(statisticClient.getStatisticsAsync(any(LocalDateTime.class), any(LocalDateTime.class),
+                anyList(), anyBoolean())).thenReturn(Mono.never());
+        long startedAt = System.nanoTime();
+        EventDto event = eventService.getById(eventId);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)).isLessThan(2000);
+        assertThat(event.getTitle()).isEqualTo(newEventDto.getTitle());
+        assertThat(event.getViews()).isEqualTo(11L);
+        assertThat(meterRegistry.get("ewm.events.views.fallback").tag("reason", "deadline").counter().count())
+                .isEqualTo(deadlines + 1);
+
+        Mockito.when(statisticClient.getStatisticsAsync(any(LocalDateTime.class), any(LocalDateTime.class),
+                anyList(), anyBoolean())).thenReturn(Mono.error(new IllegalStateException("Stats server is down")));
+        assertThat(eventService.getById(eventId).getViews()).isEqualTo(11L);
+        assertThat(meterRegistry.get("ewm.events.views.fallback").tag("reason", "error").counter().count())
+                .isEqualTo(errors + 1);
+    }
+}
@@ -0,0 +1,166 @@
+package ru.practicum.event.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import reactor.core.publisher.Mono;
+import ru.practicum.StatisticClient;
+import ru.practicum.category.CategoryRepository;
+import ru.practicum.category.service.CategoryService;
+import ru.practicum.dto.category.NewCategoryDto;
+import ru.practicum.dto.event.NewEventDto;
+import ru.practicum.dto.event.admin.AdminAction;
+import ru.practicum.dto.event.admin.AdminUpdateEventRequest;
+import ru.practicum.dto.statistics.ViewStatsDto;
+import ru.practicum.dto.user.NewUserDto;
+import ru.practicum.event.EventRepository;
+import ru.practicum.user.UserRepository;
+import ru.practicum.user.service.UserService;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+
+/**
+ * Запросы одного опубликованного события приходят одновременно из разных потоков, поэтому тест
+ * не транзакционный и удаляет созданные данные сам. Ответ сервиса статистики замедлен,
+ * чтобы вычисления пересекались, как при реальной нагрузке. Загруженное событие держится в памяти минуту.
+ */
+@SpringBootTest(properties = "ewm.events.micro-cache-ttl=PT1M")
+@Slf4j
+public class HotEventReadLoadTest {
+    private static final int REQUESTS = 400;
+    private static final int THREADS = 32;
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private StatisticClient statisticClient;
+
+    private final AtomicInteger statsCalls = new AtomicInteger();
+    private Long userId;
+    private Long categoryId;
+    private Long eventId;
+
+    @BeforeEach
+    public void setUp() {
+        userId = userService.create(new NewUserDto("viral@bobs.ru", "MR.VIRAL")).getId();
+        categoryId = categoryService.create(new NewCategoryDto("Viral")).getId();
+
+        NewEventDto newEventDto = new NewEventDto();
+        newEventDto.setTitle("Viral event");
+        newEventDto.setCategory(categoryId);
+        newEventDto.setEventDate(LocalDateTime.now().plusDays(1));
+        eventId = eventService.create(userId, newEventDto).getId();
+
+        AdminUpdateEventRequest publish = new AdminUpdateEventRequest();
+        publish.setStateAction(AdminAction.PUBLISH_EVENT);
+        eventService.update(eventId, publish);
+
+        Mockito.when(statisticClient.getStatisticsAsync(any(LocalDateTime.class), any(LocalDateTime.class),
+                anyList(), anyBoolean())).thenAnswer(invocation -> {
+            statsCalls.incrementAndGet();
+            return Mono.just(List.of(new ViewStatsDto("ewm-service", "/events/" + eventId, 42L)))
+                    .delayElement(Duration.ofMillis(20));
+        });
+    }
+
+    @AfterEach
+    public void tearDown() {
+        eventRepository.deleteById(eventId);
+        categoryRepository.deleteById(categoryId);
+        userRepository.deleteById(userId);
+    }
+
+    @Test
+    public void testConcurrentReadsOfOneEventShareLoads() throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            for (int i = 0; i < REQUESTS; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return eventService.getById(eventId).getViews();
+                }));
+            }
+            long startedAt = System.nanoTime();
+            start.countDown();
+            for (Future<Long> result : results) {
+                assertThat(result.get(1, TimeUnit.MINUTES)).isEqualTo(42L);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            long statements = statistics.getPrepareStatementCount();
+            log.info("{} concurrent reads of one event served in {} ms with {} statements and {} stats calls",
+                    REQUESTS, elapsedMillis, statements, statsCalls.get());
+
+            // Без объединения каждый запрос выполнял бы свой запрос к базе и к сервису статистики
+            assertThat(statsCalls.get()).isLessThan(REQUESTS / 4);
+            assertThat(statements).isLessThan(REQUESTS / 4);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testChangeDuringLoadIsNotCached() {
+        Mockito.when(statisticClient.getStatisticsAsync(any(LocalDateTime.class), any(LocalDateTime.class),
+                anyList(), anyBoolean())).thenAnswer(invocation -> {
+            // Событие уже прочитано из базы, и его изменение фиксируется до окончания загрузки
+            if (statsCalls.getAndIncrement() == 0) {
+                AdminUpdateEventRequest rename = new AdminUpdateEventRequest();
+                rename.setTitle("Renamed viral event");
+                Thread update = new Thread(() -> eventService.update(eventId, rename));
+                update.start();
+                update.join();
+            }
+            return Mono.just(List.of(new ViewStatsDto("ewm-service", "/events/" + eventId, 42L)));
+        });
+
+        assertThat(eventService.getById(eventId).getTitle()).isEqualTo("Viral event");
+        assertThat(eventService.getById(eventId).getTitle()).isEqualTo("Renamed viral event");
+    }
+}
@@ -0,0 +1,131 @@
+package ru.practicum.event.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.category.Category;
+import ru.practicum.dto.event.EventShortDto;
+import ru.practicum.dto.event.EventSortOption;
+import ru.practicum.dto.event.EventState;
+import ru.practicum.event.CursorPage;
+import ru.practicum.event.Event;
+import ru.practicum.event.EventChangedEvent;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PublicEventSearchCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private PublicEventSearchCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new PublicEventSearchCache(meterRegistry, Duration.ofMinutes(1), DataSize.ofMegabytes(1));
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    public void testKeyIsNormalized() {
+        PublicEventSearchCache.Key key = key("  Jazz   Night ", List.of(3L, 1L, 3L));
+
+        assertThat(key).isEqualTo(key("jazz night", List.of(1L, 3L)));
+        assertThat(key(null, null)).isEqualTo(key("  ", List.of()));
+        assertThat(key).isNotEqualTo(key("jazz night", List.of(1L)));
+    }
+
+    @Test
+    public void testRepeatedSearchIsServedFromCache() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(get(key("jazz", List.of(1L)), 10L, 11L).getContent())
+                    .extracting(EventShortDto::getId).containsExactly(10L, 11L);
+        }
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tags("cache", "eventSearch", "result", "hit")
+                .functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void testChangeInvalidatesMatchingPages() {
+        get(key(null, List.of(1L)), 10L);
+        get(key(null, List.of(2L)), 20L);
+        get(key(null, List.of(3L)), 30L);
+        get(key(null, null), 10L, 20L, 30L);
+
+        cache.onEventChanged(new EventChangedEvent(event(40L, 1L, EventState.PUBLISHED), 1L));
+        assertThat(reloaded(key(null, List.of(1L)))).isTrue();
+        assertThat(reloaded(key(null, null))).isTrue();
+        assertThat(reloaded(key(null, List.of(2L)))).isFalse();
+
+        // Событие со страницы категории 3 перенесено в категорию 2
+        cache.onEventChanged(new EventChangedEvent(event(30L, 2L, EventState.PUBLISHED), 3L));
+        assertThat(reloaded(key(null, List.of(2L)))).isTrue();
+        assertThat(reloaded(key(null, List.of(3L)))).isTrue();
+    }
+
+    @Test
+    public void testPendingChangesKeepPages() {
+        get(key(null, null), 10L);
+
+        cache.onEventChanged(new EventChangedEvent(event(50L, 1L, EventState.PENDING), 1L));
+
+        assertThat(reloaded(key(null, null))).isFalse();
+    }
+
+    @Test
+    public void testPageLoadedDuringChangeIsNotCached() {
+        PublicEventSearchCache.Key key = key(null, List.of(1L));
+        cache.get(key, () -> {
+            cache.onEventChanged(new EventChangedEvent(event(10L, 1L, EventState.PUBLISHED), 1L));
+            return page(10L);
+        });
+
+        assertThat(reloaded(key)).isTrue();
+    }
+
+    private PublicEventSearchCache.Key key(String text, List<Long> categories) {
+        return PublicEventSearchCache.Key.of(text, categories, null, null, null, false,
+                EventSortOption.EVENT_DATE, 0, null, 10);
+    }
+
+    private CursorPage<EventShortDto> get(PublicEventSearchCache.Key key, Long... ids) {
+        return cache.get(key, () -> {
+            loads.incrementAndGet();
+            return page(ids);
+        });
+    }
+
+    private boolean reloaded(PublicEventSearchCache.Key key) {
+        int before = loads.get();
+        get(key);
+        return loads.get() > before;
+    }
+
+    private CursorPage<EventShortDto> page(Long... ids) {
+        return new CursorPage<>(Arrays.stream(ids).map(id -> {
+            EventShortDto event = new EventShortDto();
+            event.setId(id);
+            event.setTitle("Event " + id);
+            return event;
+        }).collect(Collectors.toList()), null);
+    }
+
+    private Event event(Long id, Long categoryId, EventState state) {
+        Event event = new Event();
+        event.setId(id);
+        Category category = new Category();
+        category.setId(categoryId);
+        event.setCategory(category);
+        event.setState(state);
+        return event;
+    }
+}
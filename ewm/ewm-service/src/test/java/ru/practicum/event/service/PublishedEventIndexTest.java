@@ -0,0 +1,119 @@
+package ru.practicum.event.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import ru.practicum.category.Category;
+import ru.practicum.dto.event.EventSortOption;
+import ru.practicum.dto.event.EventState;
+import ru.practicum.event.Event;
+import ru.practicum.event.EventRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class PublishedEventIndexTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.now().plusDays(1).withNano(0);
+
+    private PublishedEventIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new PublishedEventIndex(null);
+        index.apply(event(1L, "Jazz evening", "Live music in the park", 1L, false, BASE.plusHours(3), 50L));
+        index.apply(event(2L, "Rock concert", "Loud music", 2L, true, BASE.plusHours(1), 30L));
+        index.apply(event(3L, "Jazz brunch", "Pancakes and jazz", 1L, true, BASE.plusHours(2), 20L));
+        index.apply(event(4L, "Pending jazz", "Not published yet", 1L, false, BASE, 0L));
+    }
+
+    @Test
+    public void testFiltersAreIntersected() {
+        assertThat(search("jazz", null, null, null, null, EventSortOption.EVENT_DATE)).containsExactly(3L, 1L);
+        assertThat(search("JAZZ music", null, null, null, null, EventSortOption.EVENT_DATE)).containsExactly(1L);
+        assertThat(search(null, List.of(1L), true, null, null, EventSortOption.EVENT_DATE)).containsExactly(3L);
+        assertThat(search(null, null, false, null, null, EventSortOption.EVENT_DATE)).containsExactly(1L);
+        assertThat(search(null, null, null, BASE.plusHours(2), BASE.plusHours(3), EventSortOption.EVENT_DATE))
+                .containsExactly(3L, 1L);
+        assertThat(search("opera", null, null, null, null, EventSortOption.EVENT_DATE)).isEmpty();
+    }
+
+    @Test
+    public void testSortAndPaging() {
+        assertThat(search(null, null, null, null, null, EventSortOption.EVENT_DATE)).containsExactly(2L, 3L, 1L);
+        assertThat(search(null, null, null, null, null, EventSortOption.VIEWS)).containsExactly(1L, 2L, 3L);
+        assertThat(search(null, null, null, null, null, null)).containsExactly(1L, 2L, 3L);
+        assertThat(index.search(null, null, null, null, null, null, EventSortOption.EVENT_DATE, 1, 1)).containsExactly(3L);
+        assertThat(index.search(null, null, null, null, null, null, EventSortOption.VIEWS, 2, 5)).containsExactly(3L);
+    }
+
+    @Test
+    public void testUpdatesReplaceAndRemoveEvents() {
+        index.apply(event(2L, "Rock concert", "Loud music", 2L, true, BASE.plusHours(4), 30L));
+        assertThat(search(null, null, null, null, null, EventSortOption.EVENT_DATE)).containsExactly(3L, 1L, 2L);
+
+        index.apply(event(1L, "Blues evening", "Live music in the park", 1L, false, BASE.plusHours(3), 50L));
+        assertThat(search("jazz", null, null, null, null, EventSortOption.EVENT_DATE)).containsExactly(3L);
+        assertThat(search("blues", null, null, null, null, EventSortOption.EVENT_DATE)).containsExactly(1L);
+
+        Event canceled = event(3L, "Jazz brunch", "Pancakes and jazz", 1L, true, BASE.plusHours(2), 20L);
+        canceled.setState(EventState.CANCELED);
+        index.apply(canceled);
+        assertThat(search(null, List.of(1L), null, null, null, EventSortOption.EVENT_DATE)).containsExactly(1L);
+
+        index.apply(event(5L, "Jazz night", "Reuses a free document", 2L, false, BASE.plusHours(5), 5L));
+        assertThat(search("jazz", null, null, null, null, EventSortOption.EVENT_DATE)).containsExactly(5L);
+        assertThat(search(null, null, null, null, null, EventSortOption.EVENT_DATE)).containsExactly(1L, 2L, 5L);
+    }
+
+    @Test
+    public void testChangesDuringRebuildAreNotLost() throws InterruptedException {
+        EventRepository eventRepository = Mockito.mock(EventRepository.class);
+        PublishedEventIndex rebuilt = new PublishedEventIndex(eventRepository);
+        Event stale = event(1L, "Jazz evening", "Live music in the park", 1L, false, BASE.plusHours(3), 50L);
+        Event updated = event(1L, "Blues evening", "Live music in the park", 1L, false, BASE.plusHours(3), 50L);
+        Thread change = new Thread(() -> rebuilt.apply(updated));
+        Mockito.when(eventRepository.findByStateAndEventDateAfter(eq(EventState.PUBLISHED), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> {
+                    // Изменение фиксируется, пока перестроение читает события
+                    change.start();
+                    while (change.isAlive() && change.getState() != Thread.State.WAITING) {
+                        Thread.onSpinWait();
+                    }
+                    return List.of(stale);
+                });
+
+        rebuilt.rebuild();
+        change.join();
+
+        assertThat(rebuilt.search("blues", null, null, null, null, null, EventSortOption.EVENT_DATE, 0, 10))
+                .containsExactly(1L);
+        assertThat(rebuilt.search("jazz", null, null, null, null, null, EventSortOption.EVENT_DATE, 0, 10)).isEmpty();
+    }
+
+    private List<Long> search(String text, List<Long> categories, Boolean paid,
+                              LocalDateTime rangeStart, LocalDateTime rangeEnd, EventSortOption sort) {
+        return index.search(text, categories, paid, rangeStart, rangeEnd, null, sort, 0, 10);
+    }
+
+    private Event event(Long id, String title, String annotation, Long categoryId, boolean paid,
+                        LocalDateTime eventDate, Long views) {
+        Event event = new Event();
+        event.setId(id);
+        event.setTitle(title);
+        event.setAnnotation(annotation);
+        Category category = new Category();
+        category.setId(categoryId);
+        event.setCategory(category);
+        event.setPaid(paid);
+        event.setEventDate(eventDate);
+        event.setViews(views);
+        event.setConfirmedRequests(0L);
+        event.setState(id == 4L ? EventState.PENDING : EventState.PUBLISHED);
+        return event;
+    }
+}
@@ -0,0 +1,67 @@
+package ru.practicum.event.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testWaitersGetLeaderError() throws Exception {
+        SingleFlight<Long, String> flight = new SingleFlight<>(Duration.ofMinutes(1));
+        CountDownLatch leading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> flight.execute(1L, () -> {
+            leading.countDown();
+            await(release);
+            throw new AssertionError("load failed");
+        }));
+        assertThat(leading.await(1, TimeUnit.MINUTES)).isTrue();
+        CompletableFuture<String> waiter = CompletableFuture.supplyAsync(() -> flight.execute(1L, () -> "own load"));
+
+        // Ждущий вызов не может завершиться раньше ведущего, поэтому без ведущего он ждёт
+        Thread.sleep(100);
+        assertThat(waiter).isNotDone();
+        release.countDown();
+
+        assertThatThrownBy(() -> waiter.get(1, TimeUnit.MINUTES))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(AssertionError.class);
+        assertThatThrownBy(() -> leader.get(1, TimeUnit.MINUTES)).hasCauseInstanceOf(AssertionError.class);
+        assertThat(flight.execute(1L, () -> "next load")).isEqualTo("next load");
+    }
+
+    @Test
+    public void testWaitersGiveUpOnStuckLeader() throws Exception {
+        SingleFlight<Long, String> flight = new SingleFlight<>(Duration.ofMillis(100));
+        CountDownLatch leading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> flight.execute(1L, () -> {
+            leading.countDown();
+            await(release);
+            return "slow load";
+        }));
+        try {
+            assertThat(leading.await(1, TimeUnit.MINUTES)).isTrue();
+            assertThatThrownBy(() -> flight.execute(1L, () -> "own load")).isInstanceOf(IllegalStateException.class);
+        } finally {
+            release.countDown();
+        }
+        assertThat(leader.get(1, TimeUnit.MINUTES)).isEqualTo("slow load");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
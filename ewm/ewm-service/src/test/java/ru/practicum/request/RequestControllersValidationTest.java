@@ -39,7 +39,7 @@ class RequestControllersValidationTest {
 
     @BeforeEach
     public void setUp() {
-        ParticipationRequestDto requestDto = new ParticipationRequestDto(LocalDateTime.now(), 1L, 1L, 1L, RequestStatus.PENDING);
+        ParticipationRequestDto requestDto = new ParticipationRequestDto(LocalDateTime.now(), 1L, 1L, 1L, RequestStatus.PENDING, null);
         List<ParticipationRequestDto> requestDtoList = Collections.singletonList(requestDto);
         EventRequestStatusUpdateCommand updateRequest = new EventRequestStatusUpdateCommand(Collections.singletonList(1L), RequestStatus.CONFIRMED);
         EventRequestStatusUpdateResponse updateResult = new EventRequestStatusUpdateResponse(Collections.singletonList(requestDto), Collections.emptyList());
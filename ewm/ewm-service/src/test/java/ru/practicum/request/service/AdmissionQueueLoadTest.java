@@ -0,0 +1,82 @@
+package ru.practicum.request.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.practicum.dto.requests.EventRequestStatusUpdateCommand;
+import ru.practicum.dto.requests.EventRequestStatusUpdateResponse;
+import ru.practicum.dto.requests.ParticipationRequestDto;
+import ru.practicum.dto.requests.RequestStatus;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Порог популярности ниже числа заявок в секунду: первые заявки принимаются напрямую, остальные через очередь допуска,
+ * и оба пути должны давать одинаковые ответы.
+ */
+@SpringBootTest(properties = {
+        "ewm.requests.admission.enabled=true",
+        "ewm.requests.admission.hot-threshold=100"
+})
+@Slf4j
+public class AdmissionQueueLoadTest extends HotEventRequestsTestBase {
+
+    @Test
+    public void testHotEventRequestsAreConfirmedOrWaitlisted() throws Exception {
+        long started = System.nanoTime();
+        List<ParticipationRequestDto> requests = requestInParallel(participantId ->
+                participationRequestService.create(participantId, eventId));
+        long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        log.info("{} requests to one hot event admitted in {} ms, {} requests/s",
+                PARTICIPANTS, elapsedMillis, PARTICIPANTS * 1000L / elapsedMillis);
+
+        List<ParticipationRequestDto> confirmed = requests.stream()
+                .filter(request -> request.getStatus() == RequestStatus.CONFIRMED)
+                .collect(Collectors.toList());
+        List<ParticipationRequestDto> waitlisted = requests.stream()
+                .filter(request -> request.getStatus() == RequestStatus.PENDING)
+                .sorted(Comparator.comparing(ParticipationRequestDto::getWaitlistPosition))
+                .collect(Collectors.toList());
+
+        assertThat(confirmed).hasSize(PARTICIPANT_LIMIT);
+        assertThat(confirmed).allMatch(request -> request.getWaitlistPosition() == null);
+        assertThat(waitlisted).extracting(ParticipationRequestDto::getWaitlistPosition)
+                .containsExactlyElementsOf(IntStream.rangeClosed(1, PARTICIPANTS - PARTICIPANT_LIMIT)
+                        .boxed()
+                        .collect(Collectors.toList()));
+        assertThat(participationRequestRepository.countByEventIdAndStatus(eventId, RequestStatus.CONFIRMED))
+                .isEqualTo(PARTICIPANT_LIMIT);
+        assertThat(eventRepository.findById(eventId).orElseThrow().getConfirmedRequests())
+                .isEqualTo(PARTICIPANT_LIMIT);
+
+        // Участник отменяет заявку: его место получает первая заявка очереди ожидания, остальная очередь сохраняется
+        ParticipationRequestDto canceled = confirmed.get(0);
+        Long head = waitlisted.stream().map(ParticipationRequestDto::getId).min(Long::compare).orElseThrow();
+        participationRequestService.delete(canceled.getRequester(), canceled.getId());
+
+        assertThat(participationRequestRepository.findById(head).orElseThrow().getStatus())
+                .isEqualTo(RequestStatus.CONFIRMED);
+        assertThat(participationRequestRepository.countByEventIdAndStatus(eventId, RequestStatus.CONFIRMED))
+                .isEqualTo(PARTICIPANT_LIMIT);
+        assertThat(eventRepository.findById(eventId).orElseThrow().getConfirmedRequests())
+                .isEqualTo(PARTICIPANT_LIMIT);
+        assertThat(participationRequestRepository.countByEventIdAndStatus(eventId, RequestStatus.PENDING))
+                .isEqualTo(waitlisted.size() - 1);
+
+        // Подтверждение заявки из очереди при заполненном лимите отклоняет только её
+        EventRequestStatusUpdateCommand confirm = new EventRequestStatusUpdateCommand();
+        confirm.setStatus(RequestStatus.CONFIRMED);
+        confirm.setRequestIds(List.of(waitlisted.get(waitlisted.size() - 1).getId()));
+        EventRequestStatusUpdateResponse response = participationRequestService.updateStatus(initiatorId, eventId, confirm);
+
+        assertThat(response.getRejectedRequests()).hasSize(1);
+        assertThat(participationRequestRepository.countByEventIdAndStatus(eventId, RequestStatus.PENDING))
+                .isEqualTo(waitlisted.size() - 2);
+    }
+}
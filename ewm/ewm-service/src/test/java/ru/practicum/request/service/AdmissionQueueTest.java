@@ -0,0 +1,88 @@
+package ru.practicum.request.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.practicum.dto.requests.ParticipationRequestDto;
+import ru.practicum.event.Event;
+import ru.practicum.event.EventRepository;
+import ru.practicum.event.service.EventService;
+import ru.practicum.exception.NotFoundException;
+import ru.practicum.request.ParticipationRequestMapper;
+import ru.practicum.request.ParticipationRequestRepository;
+import ru.practicum.user.UserRepository;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+
+/**
+ * Решение по событию задерживается в репозитории, чтобы заявка ждала поток очереди дольше отведённого времени.
+ * Событие не находится, поэтому решение — NotFoundException.
+ */
+public class AdmissionQueueTest {
+    private final EventRepository eventRepository = Mockito.mock(EventRepository.class);
+    private final CountDownLatch deciding = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private AdmissionQueue queue;
+
+    @BeforeEach
+    public void setUp() {
+        Mockito.when(eventRepository.findByIdForUpdate(anyLong())).thenAnswer(invocation -> {
+            deciding.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.<Event>empty();
+        });
+        queue = new AdmissionQueue(eventRepository, Mockito.mock(EventService.class), Mockito.mock(UserRepository.class),
+                Mockito.mock(ParticipationRequestRepository.class), Mockito.mock(ParticipationRequestMapper.class),
+                Mockito.mock(PlatformTransactionManager.class), 1, 1, 10, 100,
+                Duration.ofMillis(50), Duration.ofMillis(100));
+        queue.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        queue.stop();
+    }
+
+    @Test
+    public void testTakenAdmissionWaitsForDecisionAfterTimeout() throws Exception {
+        CompletableFuture<Optional<ParticipationRequestDto>> admitted =
+                CompletableFuture.supplyAsync(() -> queue.admit(1L, 1L));
+        assertThat(deciding.await(5, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(200);
+        release.countDown();
+
+        assertThatThrownBy(() -> admitted.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    public void testStopWithBusyWorkerSendsQueuedAdmissionsToDirectPath() throws Exception {
+        CompletableFuture<Optional<ParticipationRequestDto>> first =
+                CompletableFuture.supplyAsync(() -> queue.admit(1L, 1L));
+        assertThat(deciding.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Optional<ParticipationRequestDto>> queued =
+                CompletableFuture.supplyAsync(() -> queue.admit(2L, 1L));
+        Thread.sleep(20);
+
+        queue.stop();
+
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEmpty();
+        // Остановка не решала заявки сама, пока поток очереди занят событием
+        Mockito.verify(eventRepository, Mockito.times(1)).findByIdForUpdate(anyLong());
+        release.countDown();
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(NotFoundException.class);
+    }
+}
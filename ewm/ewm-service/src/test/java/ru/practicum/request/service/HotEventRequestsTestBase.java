@@ -0,0 +1,124 @@
+package ru.practicum.request.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.practicum.category.CategoryRepository;
+import ru.practicum.category.service.CategoryService;
+import ru.practicum.dto.category.NewCategoryDto;
+import ru.practicum.dto.event.NewEventDto;
+import ru.practicum.dto.event.admin.AdminAction;
+import ru.practicum.dto.event.admin.AdminUpdateEventRequest;
+import ru.practicum.dto.user.NewUserDto;
+import ru.practicum.event.EventRepository;
+import ru.practicum.event.service.EventService;
+import ru.practicum.request.ParticipationRequestRepository;
+import ru.practicum.user.UserRepository;
+import ru.practicum.user.service.UserService;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Опубликованное событие без модерации с ограниченным числом мест и участники, подающие на него заявки параллельно.
+ * Каждая заявка фиксируется в своей транзакции, поэтому тесты не транзакционные и созданные данные удаляются здесь.
+ */
+public abstract class HotEventRequestsTestBase {
+    protected static final int PARTICIPANTS = 2000;
+    protected static final int PARTICIPANT_LIMIT = 50;
+    private static final int THREADS = 16;
+
+    @Autowired
+    protected ParticipationRequestService participationRequestService;
+
+    @Autowired
+    protected EventService eventService;
+
+    @Autowired
+    protected CategoryService categoryService;
+
+    @Autowired
+    protected UserService userService;
+
+    @Autowired
+    protected ParticipationRequestRepository participationRequestRepository;
+
+    @Autowired
+    protected EventRepository eventRepository;
+
+    @Autowired
+    protected CategoryRepository categoryRepository;
+
+    @Autowired
+    protected UserRepository userRepository;
+
+    private final List<Long> userIds = new ArrayList<>();
+    private Long categoryId;
+    protected Long initiatorId;
+    protected Long eventId;
+
+    @BeforeEach
+    public void setUp() {
+        initiatorId = userService.create(new NewUserDto("hot.event@bobs.ru", "MR.HOT")).getId();
+        userIds.add(initiatorId);
+        categoryId = categoryService.create(new NewCategoryDto("Concerts")).getId();
+
+        NewEventDto newEventDto = new NewEventDto();
+        newEventDto.setTitle("Sold out concert");
+        newEventDto.setCategory(categoryId);
+        newEventDto.setParticipantLimit(PARTICIPANT_LIMIT);
+        newEventDto.setRequestModeration(false);
+        newEventDto.setEventDate(LocalDateTime.now().plusDays(1));
+        eventId = eventService.create(initiatorId, newEventDto).getId();
+
+        AdminUpdateEventRequest publish = new AdminUpdateEventRequest();
+        publish.setStateAction(AdminAction.PUBLISH_EVENT);
+        eventService.update(eventId, publish);
+
+        for (int i = 0; i < PARTICIPANTS; i++) {
+            userIds.add(userService.create(new NewUserDto("fan" + i + "@bobs.ru", "FAN " + i)).getId());
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        participationRequestRepository.deleteAllInBatch(participationRequestRepository.findByEventId(eventId));
+        eventRepository.deleteById(eventId);
+        categoryRepository.deleteById(categoryId);
+        userRepository.deleteAllByIdInBatch(userIds);
+    }
+
+    /**
+     * Подаёт заявку от каждого участника, все потоки стартуют одновременно.
+     *
+     * @return результаты в порядке участников
+     */
+    protected <T> List<T> requestInParallel(Function<Long, T> request) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        try {
+            for (Long participantId : userIds.subList(1, userIds.size())) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return request.apply(participantId);
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get(1, TimeUnit.MINUTES));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ru.practicum.request.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.practicum.dto.requests.RequestStatus;
+import ru.practicum.exception.ConditionNotMetException;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+public class ParticipationRequestConcurrencyTest extends HotEventRequestsTestBase {
+
+    @Test
+    public void testParallelRequestsNeverExceedParticipantLimit() throws Exception {
+        List<RequestStatus> results = requestInParallel(participantId -> {
+            try {
+                return participationRequestService.create(participantId, eventId).getStatus();
+            } catch (ConditionNotMetException e) {
+                return RequestStatus.REJECTED;
+            }
+        });
+
+        long confirmed = results.stream().filter(status -> status == RequestStatus.CONFIRMED).count();
+        long rejected = results.size() - confirmed;
+
+        assertThat(confirmed).isEqualTo(PARTICIPANT_LIMIT);
+        assertThat(rejected).isEqualTo(PARTICIPANTS - PARTICIPANT_LIMIT);
+        assertThat(participationRequestRepository.countByEventIdAndStatus(eventId, RequestStatus.CONFIRMED))
+                .isEqualTo(PARTICIPANT_LIMIT);
+        assertThat(participationRequestRepository.findByEventId(eventId)).hasSize(PARTICIPANT_LIMIT);
+        assertThat(eventRepository.findById(eventId).orElseThrow().getConfirmedRequests())
+                .isEqualTo(PARTICIPANT_LIMIT);
+    }
+}
@@ -1,5 +1,7 @@
 package ru.practicum.request.service;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -23,9 +25,13 @@ import ru.practicum.request.ParticipationRequestMapper;
 import ru.practicum.request.ParticipationRequestRepository;
 import ru.practicum.user.service.UserService;
 
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.transaction.Transactional;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -55,6 +61,12 @@ public class ParticipationRequestServiceIntegrationTest {
     @Autowired
     private ParticipationRequestMapper participationRequestMapper;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     private Long partisipantId;
     private Long eventId;
     private Long userId;
@@ -100,6 +112,23 @@ public class ParticipationRequestServiceIntegrationTest {
         assertThat(exception.getMessage()).isEqualTo("Participation request already exists.");
     }
 
+    @Test
+    public void testCreateParticipationRequest_NoDuplicateLookup() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            entityManager.flush();
+            entityManager.clear();
+            statistics.clear();
+            participationRequestService.create(partisipantId, eventId);
+
+            // Пользователь, событие и вставка заявки: повторы отсекает уникальный индекс
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
     @Test
     public void testUpdateStatus() {
         ParticipationRequestDto requestDto = participationRequestService.create(partisipantId, eventId);
@@ -114,6 +143,82 @@ public class ParticipationRequestServiceIntegrationTest {
         assertThat(result.getConfirmedRequests().get(0).getStatus()).isEqualTo(RequestStatus.CONFIRMED);
     }
 
+    @Test
+    public void testConfirmedRequestsCounterFollowsRequestStatus() {
+        ParticipationRequestDto requestDto = participationRequestService.create(partisipantId, eventId);
+        EventRequestStatusUpdateCommand updateRequest = new EventRequestStatusUpdateCommand();
+        updateRequest.setRequestIds(Arrays.asList(requestDto.getId()));
+        updateRequest.setStatus(RequestStatus.CONFIRMED);
+        participationRequestService.updateStatus(userId, eventId, updateRequest);
+        // Счётчик меняется запросом к базе, сущность в контексте теста его не видит
+        entityManager.clear();
+
+        assertThat(eventService.getById(userId, eventId).getConfirmedRequests()).isEqualTo(1L);
+        Long lateUserId = userService.create(new NewUserDto("late.bob@bobs.ru", "MR.LATE")).getId();
+        ConditionNotMetException exception = assertThrows(
+                ConditionNotMetException.class,
+                () -> participationRequestService.create(lateUserId, eventId)
+        );
+        assertThat(exception.getMessage()).isEqualTo("Participant limit reached.");
+
+        participationRequestService.delete(partisipantId, requestDto.getId());
+        entityManager.clear();
+
+        assertThat(eventService.getById(userId, eventId).getConfirmedRequests()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testUpdateStatus_LargeBatchRunsConstantStatements() {
+        NewEventDto newEventDto = new NewEventDto();
+        newEventDto.setTitle("Popular Event");
+        newEventDto.setCategory(categoryService.create(new NewCategoryDto("Concerts")).getId());
+        newEventDto.setParticipantLimit(300);
+        newEventDto.setEventDate(LocalDateTime.now().plusDays(1));
+        Long popularEventId = eventService.create(userId, newEventDto).getId();
+        var publish = new AdminUpdateEventRequest();
+        publish.setStateAction(AdminAction.PUBLISH_EVENT);
+        eventService.update(popularEventId, publish);
+
+        List<Long> requestIds = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Long participantId = userService.create(new NewUserDto("fan" + i + "@bobs.ru", "FAN " + i)).getId();
+            requestIds.add(participationRequestService.create(participantId, popularEventId).getId());
+        }
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            EventRequestStatusUpdateCommand updateRequest = new EventRequestStatusUpdateCommand();
+            updateRequest.setStatus(RequestStatus.CONFIRMED);
+
+            updateRequest.setRequestIds(requestIds.subList(0, 10));
+            entityManager.flush();
+            entityManager.clear();
+            statistics.clear();
+            EventRequestStatusUpdateResponse small = participationRequestService.updateStatus(userId, popularEventId, updateRequest);
+            long smallBatch = statistics.getPrepareStatementCount();
+
+            updateRequest.setRequestIds(requestIds.subList(10, requestIds.size()));
+            entityManager.clear();
+            statistics.clear();
+            EventRequestStatusUpdateResponse large = participationRequestService.updateStatus(userId, popularEventId, updateRequest);
+            long largeBatch = statistics.getPrepareStatementCount();
+
+            assertThat(small.getConfirmedRequests()).hasSize(10);
+            assertThat(large.getConfirmedRequests()).hasSize(290);
+            assertThat(large.getRejectedRequests()).hasSize(700);
+            // Второй пакет исчерпывает лимит, поэтому добавляется один запрос, отклоняющий оставшиеся заявки
+            assertThat(largeBatch).isEqualTo(smallBatch + 1);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+
+        entityManager.clear();
+        assertThat(participationRequestRepository.countByEventIdAndStatus(popularEventId, RequestStatus.CONFIRMED)).isEqualTo(300);
+        assertThat(participationRequestRepository.countByEventIdAndStatus(popularEventId, RequestStatus.PENDING)).isZero();
+        assertThat(eventService.getEntityById(popularEventId).getConfirmedRequests()).isEqualTo(300);
+    }
+
     @Test
     public void testUpdateStatus_NonInitiator() {
         Long anotherUserId = userService.create(new NewUserDto("just.bobs@bobs.ru", "MRS.BOBS")).getId();
@@ -1,5 +1,7 @@
 package ru.practicum.user.service;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +15,7 @@ import ru.practicum.user.User;
 import ru.practicum.user.UserMapper;
 import ru.practicum.user.UserRepository;
 
+import javax.persistence.EntityManagerFactory;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -34,6 +37,9 @@ public class UserServiceIntegrationTest {
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     private Long userId;
 
     @BeforeEach
@@ -120,4 +126,28 @@ public class UserServiceIntegrationTest {
         assertThat(users).isNotNull();
         assertThat(users).hasSize(2); // Должны получить обоих пользователей
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetAllUsers_FullPageRunsSingleQuery() {
+        for (int i = 0; i < 3; i++) {
+            userService.create(new NewUserDto("user" + i + "@example.com", "User " + i));
+        }
+        userRepository.flush();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            statistics.clear();
+            List<UserDto> users = userService.getAll(Collections.emptyList(), 0, 2);
+            assertThat(users).hasSize(2);
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+            statistics.clear();
+            users = userService.getAll(Arrays.asList(userId, users.get(0).getId(), users.get(1).getId()), 0, 2);
+            assertThat(users).hasSize(2);
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+}
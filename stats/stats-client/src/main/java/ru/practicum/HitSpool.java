@@ -0,0 +1,178 @@
+package ru.practicum;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Локальный файл для пакетов запросов, которые не удалось доставить в сервис статистики.
+ * Файл отображается в память целиком, записи только добавляются в конец и читаются в порядке добавления.
+ * Формат: заголовок (магическое число, позиция чтения, позиция записи), затем записи [длина][CRC32][данные].
+ * Позиция записи в заголовке меняется после записи данных, поэтому запись, оборванная падением процесса,
+ * не видна при следующем запуске. Запись с несовпадающей CRC и все записи после неё отбрасываются.
+ * Когда все записи прочитаны, файл начинается заново, а при нехватке места непрочитанные записи
+ * переносятся в начало файла.
+ */
+@Slf4j
+class HitSpool implements Closeable {
+    private static final int MAGIC = 0x45574d53;
+    private static final int READ_POSITION = 4;
+    private static final int WRITE_POSITION = 8;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int readPosition;
+    private int writePosition;
+
+    HitSpool(Path path, long maxSize) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = Math.max(maxSize, channel.size());
+        if (size <= HEADER_SIZE + RECORD_HEADER_SIZE || size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IllegalArgumentException("Spool size must be between " + (HEADER_SIZE + RECORD_HEADER_SIZE) +
+                    " bytes and 2 GB, got " + size);
+        }
+        this.capacity = (int) size;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        if (buffer.getInt(0) == MAGIC) {
+            readPosition = buffer.getInt(READ_POSITION);
+            writePosition = buffer.getInt(WRITE_POSITION);
+            if (readPosition < HEADER_SIZE || readPosition > writePosition || writePosition > capacity) {
+                log.warn("Stats spool {} has an invalid header, its contents are discarded", path);
+                reset();
+            }
+        } else {
+            buffer.putInt(0, MAGIC);
+            reset();
+        }
+    }
+
+    /**
+     * Добавляет запись в конец файла.
+     *
+     * @return false, если записи не хватило места даже после переноса непрочитанных записей в начало файла
+     */
+    synchronized boolean append(byte[] payload) {
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (recordSize > capacity - writePosition) {
+            compact();
+            if (recordSize > capacity - writePosition) {
+                return false;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buffer.putInt(writePosition, payload.length);
+        buffer.putInt(writePosition + 4, (int) crc.getValue());
+        ByteBuffer target = buffer.duplicate();
+        target.position(writePosition + RECORD_HEADER_SIZE);
+        target.put(payload);
+        writePosition += recordSize;
+        buffer.putInt(WRITE_POSITION, writePosition);
+        return true;
+    }
+
+    /**
+     * Первая непрочитанная запись или null, если записей нет.
+     */
+    synchronized byte[] peek() {
+        if (readPosition == writePosition) {
+            return null;
+        }
+        int length = buffer.getInt(readPosition);
+        if (length < 0 || length > writePosition - readPosition - RECORD_HEADER_SIZE) {
+            discardCorrupted();
+            return null;
+        }
+        byte[] payload = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(readPosition + RECORD_HEADER_SIZE);
+        source.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(readPosition + 4)) {
+            discardCorrupted();
+            return null;
+        }
+        return payload;
+    }
+
+    /**
+     * Отмечает первую непрочитанную запись прочитанной.
+     */
+    synchronized void remove() {
+        if (readPosition == writePosition) {
+            return;
+        }
+        readPosition += RECORD_HEADER_SIZE + buffer.getInt(readPosition);
+        if (readPosition >= writePosition) {
+            reset();
+        } else {
+            buffer.putInt(READ_POSITION, readPosition);
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return readPosition == writePosition;
+    }
+
+    synchronized int size() {
+        return writePosition - readPosition;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void compact() {
+        if (readPosition == HEADER_SIZE) {
+            return;
+        }
+        int length = writePosition - readPosition;
+        ByteBuffer source = buffer.duplicate();
+        source.position(readPosition).limit(writePosition);
+        ByteBuffer target = buffer.duplicate();
+        target.position(HEADER_SIZE);
+        target.put(source.slice());
+        readPosition = HEADER_SIZE;
+        writePosition = HEADER_SIZE + length;
+        // Сначала позиция чтения: если процесс упадёт между двумя записями, часть записей
+        // может быть отправлена повторно, но ни одна не потеряется
+        buffer.putInt(READ_POSITION, readPosition);
+        buffer.putInt(WRITE_POSITION, writePosition);
+    }
+
+    private void discardCorrupted() {
+        log.warn("Stats spool record at offset {} is corrupted, {} spooled bytes are discarded",
+                readPosition, writePosition - readPosition);
+        reset();
+    }
+
+    private void reset() {
+        readPosition = HEADER_SIZE;
+        writePosition = HEADER_SIZE;
+        // Сначала позиция записи: при падении между двумя записями заголовок окажется некорректным
+        // и будет сброшен, а не перечитает уже доставленные записи
+        buffer.putInt(WRITE_POSITION, writePosition);
+        buffer.putInt(READ_POSITION, readPosition);
+    }
+}
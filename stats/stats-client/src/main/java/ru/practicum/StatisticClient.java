@@ -4,52 +4,54 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import ru.practicum.dto.statistics.EndpointHitDto;
+import ru.practicum.dto.statistics.StatsQueryDto;
 import ru.practicum.dto.statistics.ViewStatsDto;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class StatisticClient {
+    private static final String EVENTS_URI = "/events/";
 
     private final WebClient webClient;
+    private final StatisticHitSender hitSender;
 
 
-    public StatisticClient(@Autowired WebClient webClient) {
+    public StatisticClient(@Autowired WebClient webClient, @Autowired StatisticHitSender hitSender) {
         this.webClient = webClient;
+        this.hitSender = hitSender;
     }
 
+    /**
+     * Передаёт информацию о запросе к эндпоинту в сервис статистики асинхронно,
+     * метод не ждёт ответа сервиса статистики и не завершается ошибкой, если тот недоступен.
+     */
     public void hitStatistic(String app, String uri, String ip, LocalDateTime timestamp) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        String hitData = "{ \"app\": \"" + app + "\", \"uri\": \"" + uri + "\", \"ip\": \"" + ip + "\", \"timestamp\": \"" + timestamp.format(formatter) + "\" }";
-
-        String url = "/hit";
-
-
-        webClient.post()
-                .uri(url)
-                .header(HttpHeaders.CONTENT_TYPE, "application/json")
-                .bodyValue(hitData)
-                .retrieve()
-                .onStatus(HttpStatus::is2xxSuccessful, clientResponse -> {
-                    // Логирование или обработка успешного ответа
-                    return Mono.empty(); // Успешный ответ
-                })
-                .onStatus(HttpStatus::isError, clientResponse -> {
-                    // Логирование или обработка неуспешного ответа
-                    return Mono.error(new RuntimeException("Ошибка при отправке данных"));
-                })
-                .bodyToMono(String.class)
-                .block();
+        hitSender.send(new EndpointHitDto(app, uri, ip, timestamp));
     }
 
     public List<ViewStatsDto> getStatistics(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        return getStatisticsAsync(start, end, uris, unique).block(); // Блокируем для получения результата
+    }
+
+    /**
+     * Статистика без блокировки вызывающего потока: запрос уходит при подписке на результат,
+     * ответ обрабатывается в потоках WebClient.
+     */
+    public Mono<List<ViewStatsDto>> getStatisticsAsync(LocalDateTime start, LocalDateTime end,
+                                                      List<String> uris, boolean unique) {
 
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
         String url = "/stats?start=" + start.format(formatter) + "&end=" + end.format(formatter) + "&unique=" + unique;
@@ -67,7 +69,50 @@ public class StatisticClient {
                 .bodyToMono(new ParameterizedTypeReference<List<ViewStatsDto>>() {
                 })
                 .doOnError(error -> log.error("Error retrieving statistics for start: {}, end: {}", start, end))
-                .doOnSuccess(response -> log.info("Statistics response: {}", response))
-                .block(); // Блокируем для получения результата
+                .doOnSuccess(response -> log.info("Statistics response: {}", response));
+    }
+
+    /**
+     * Количество уникальных просмотров событий одним запросом к сервису статистики.
+     * Uri событий передаются в теле POST /stats/query, поэтому число событий не ограничено длиной URL.
+     *
+     * @param eventIds идентификаторы событий
+     * @param start    начало интервала, обычно самая ранняя дата публикации среди событий
+     * @return количество просмотров по идентификатору события, для событий без просмотров 0
+     */
+    public Map<Long, Long> getViews(Collection<Long> eventIds, LocalDateTime start) {
+        Map<Long, Long> views = new HashMap<>();
+        eventIds.forEach(id -> views.put(id, 0L));
+        LocalDateTime end = LocalDateTime.now();
+        if (views.isEmpty() || start == null || start.isAfter(end)) {
+            return views;
+        }
+
+        List<String> uris = views.keySet().stream()
+                .map(id -> EVENTS_URI + id)
+                .collect(Collectors.toList());
+        List<ViewStatsDto> stats = webClient.post()
+                .uri("/stats/query")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new StatsQueryDto(start, end, uris, true, false))
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<ViewStatsDto>>() {
+                })
+                .doOnError(error -> log.error("Error retrieving views of {} events since {}", uris.size(), start))
+                .block();
+
+        if (stats != null) {
+            for (ViewStatsDto stat : stats) {
+                if (stat.getUri() != null && stat.getUri().startsWith(EVENTS_URI)) {
+                    try {
+                        Long id = Long.parseLong(stat.getUri().substring(EVENTS_URI.length()));
+                        views.merge(id, stat.getHits(), Long::sum);
+                    } catch (NumberFormatException e) {
+                        log.warn("Unexpected uri {} in views response", stat.getUri());
+                    }
+                }
+            }
+        }
+        return views;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,363 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import ru.practicum.dto.statistics.EndpointHitDto;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Асинхронная отправка информации о запросах в сервис статистики.
+ * Запись попадает в ограниченную очередь и метод возвращается сразу, фоновый поток собирает записи
+ * в пакеты до stats.client.batch-size штук или пока первая запись пакета ждёт не дольше
+ * stats.client.flush-interval и отправляет пакет одним запросом POST /hits.
+ * Если очередь переполнена, новая запись отбрасывается: запрос пользователя важнее просмотра.
+ * Пакет, который не удалось отправить, сохраняется в локальный файл {@link HitSpool} (stats.client.spool.path),
+ * и не чаще раза в stats.client.spool.retry-interval сервис пытается дослать файл в порядке записи.
+ * Пока файл не пуст, новые пакеты дописываются в него же, чтобы порядок запросов не нарушался.
+ * В файл попадают только пакеты, не доставленные из-за ошибки сети или сервера (5xx): пакет, отклонённый
+ * сервисом статистики с ошибкой 4xx, повторная отправка не исправит, поэтому он отбрасывается.
+ * При остановке приложения очередь отправляется полностью, но не дольше stats.client.shutdown-timeout,
+ * недоставленное остаётся в файле до следующего запуска. Оставшуюся очередь досылает остановка, когда фоновый
+ * поток уже завершился, поэтому с файлом одновременно работает только один поток.
+ */
+@Component
+@Slf4j
+public class StatisticHitSender {
+    private static final TypeReference<List<EndpointHitDto>> BATCH_TYPE = new TypeReference<>() {
+    };
+    private static final long STOP_GRACE_MILLIS = 100;
+
+    private final WebClient webClient;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Duration shutdownTimeout;
+    private final long retryIntervalNanos;
+    private final BlockingQueue<EndpointHitDto> queue;
+    private final HitSpool spool;
+    private final Counter sentCounter;
+    private final Counter spooledCounter;
+    private final Counter overflowCounter;
+    private final Counter failedCounter;
+    private final Counter rejectedCounter;
+    private final Counter spoolFullCounter;
+
+    private volatile boolean running;
+    private volatile boolean stopping;
+    private volatile long stopDeadlineNanos;
+    private volatile CompletableFuture<?> inFlight;
+    private Thread sender;
+    private volatile long nextRetryNanos;
+
+    @Autowired
+    public StatisticHitSender(WebClient webClient,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${stats.client.batch-size:500}") int batchSize,
+                              @Value("${stats.client.queue-capacity:10000}") int capacity,
+                              @Value("${stats.client.flush-interval:1s}") Duration flushInterval,
+                              @Value("${stats.client.shutdown-timeout:5s}") Duration shutdownTimeout,
+                              @Value("${stats.client.spool.path:}") String spoolPath,
+                              @Value("${stats.client.spool.max-size:64MB}") DataSize spoolMaxSize,
+                              @Value("${stats.client.spool.retry-interval:5s}") Duration retryInterval) {
+        this.webClient = webClient;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.shutdownTimeout = shutdownTimeout;
+        this.retryIntervalNanos = retryInterval.toNanos();
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.spool = openSpool(spoolPath, spoolMaxSize);
+        this.nextRetryNanos = System.nanoTime();
+
+        Gauge.builder("stats.client.queue.depth", queue, BlockingQueue::size)
+                .description("Hits waiting to be sent to the stats server")
+                .register(meterRegistry);
+        this.sentCounter = Counter.builder("stats.client.hits.sent")
+                .description("Hits delivered to the stats server")
+                .register(meterRegistry);
+        this.spooledCounter = Counter.builder("stats.client.hits.spooled")
+                .description("Hits written to the local spool because the stats server was unavailable")
+                .register(meterRegistry);
+        this.overflowCounter = Counter.builder("stats.client.hits.dropped")
+                .tag("reason", "overflow")
+                .description("Hits dropped before delivery to the stats server")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("stats.client.hits.dropped")
+                .tag("reason", "send_failed")
+                .description("Hits dropped before delivery to the stats server")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("stats.client.hits.dropped")
+                .tag("reason", "rejected")
+                .description("Hits dropped before delivery to the stats server")
+                .register(meterRegistry);
+        this.spoolFullCounter = Counter.builder("stats.client.hits.dropped")
+                .tag("reason", "spool_full")
+                .description("Hits dropped before delivery to the stats server")
+                .register(meterRegistry);
+        if (spool != null) {
+            Gauge.builder("stats.client.spool.size", spool, HitSpool::size)
+                    .description("Bytes of undelivered hits in the local spool")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        sender = new Thread(this::runSender, "stats-hit-sender");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    public void send(EndpointHitDto hit) {
+        if (!queue.offer(hit)) {
+            overflowCounter.increment();
+            log.warn("Stats hit queue is full, hit to {} dropped", hit.getUri());
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // Ожидание потока, отправка каждого пакета и досылка очереди укладываются в один общий срок
+        // stats.client.shutdown-timeout. До конца срока поток не прерывается, чтобы не оборвать отправку
+        // текущего пакета: он завершится сам не позже чем через flush-interval
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        stopDeadlineNanos = deadline;
+        stopping = true;
+        running = false;
+        // join ждёт целые миллисекунды, поэтому остаток срока округляется вверх
+        sender.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime() + 999_999)));
+        if (sender.isAlive()) {
+            // Срок вышел: ожидание ответа отменяется, и поток сохраняет текущий пакет в файл
+            CompletableFuture<?> request = inFlight;
+            if (request != null) {
+                request.cancel(true);
+            }
+            sender.interrupt();
+            sender.join(STOP_GRACE_MILLIS);
+        }
+        if (sender.isAlive()) {
+            log.warn("Stats hit sender did not stop in time, {} queued hits left unsent", queue.size());
+            return;
+        }
+
+        List<EndpointHitDto> rest = new ArrayList<>(queue.size());
+        queue.drainTo(rest);
+        for (int from = 0; from < rest.size(); from += batchSize) {
+            List<EndpointHitDto> batch = rest.subList(from, Math.min(rest.size(), from + batchSize));
+            if (System.nanoTime() - deadline >= 0) {
+                fail(batch);
+            } else {
+                deliver(batch);
+            }
+        }
+        if (spool != null) {
+            try {
+                spool.close();
+            } catch (IOException e) {
+                log.error("Failed to close stats spool", e);
+            }
+        }
+        log.info("Stats hit sender stopped, {} queued hits flushed on shutdown", rest.size());
+    }
+
+    private void runSender() {
+        List<EndpointHitDto> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                EndpointHitDto first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    replaySpool();
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    EndpointHitDto next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                deliver(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Отправляет пакет, а если это невозможно, сохраняет его в файл.
+     * Пока в файле есть недоставленные пакеты, сначала досылаются они.
+     */
+    private void deliver(List<EndpointHitDto> batch) {
+        if (spool != null && !spool.isEmpty() && !replaySpool()) {
+            fail(batch);
+            return;
+        }
+        if (post(batch) == Delivery.FAILED) {
+            fail(batch);
+        }
+    }
+
+    /**
+     * Досылает сохранённые пакеты в порядке записи.
+     *
+     * @return true, если файл пуст
+     */
+    private boolean replaySpool() {
+        if (spool == null || spool.isEmpty()) {
+            return true;
+        }
+        if (System.nanoTime() - nextRetryNanos < 0) {
+            return false;
+        }
+        byte[] payload;
+        while ((payload = spool.peek()) != null) {
+            List<EndpointHitDto> batch;
+            try {
+                batch = objectMapper.readValue(payload, BATCH_TYPE);
+            } catch (IOException e) {
+                log.error("Failed to read spooled hits, record skipped", e);
+                spool.remove();
+                continue;
+            }
+            if (post(batch) == Delivery.FAILED) {
+                return false;
+            }
+            spool.remove();
+        }
+        log.info("Stats spool replayed");
+        return true;
+    }
+
+    private void fail(List<EndpointHitDto> batch) {
+        if (spool == null) {
+            failedCounter.increment(batch.size());
+            return;
+        }
+        try {
+            if (spool.append(objectMapper.writeValueAsBytes(batch))) {
+                spooledCounter.increment(batch.size());
+            } else {
+                spoolFullCounter.increment(batch.size());
+                log.warn("Stats spool is full, {} hits dropped", batch.size());
+            }
+        } catch (JsonProcessingException e) {
+            failedCounter.increment(batch.size());
+            log.error("Failed to spool {} hits", batch.size(), e);
+        }
+    }
+
+    /**
+     * Отправляет пакет. После начала остановки ответ ждётся не дольше оставшегося срока stats.client.shutdown-timeout.
+     */
+    private Delivery post(List<EndpointHitDto> batch) {
+        if (stopping && stopDeadlineNanos - System.nanoTime() <= 0) {
+            return retryLater(batch, "shutdown timeout expired");
+        }
+        CompletableFuture<?> request = null;
+        try {
+            request = webClient.post()
+                    .uri("/hits")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(batch)
+                    .retrieve()
+                    .toBodilessEntity()
+                    .toFuture();
+            inFlight = request;
+            if (stopping) {
+                request.get(stopDeadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } else {
+                request.get();
+            }
+            sentCounter.increment(batch.size());
+            return Delivery.SENT;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof WebClientResponseException
+                    && ((WebClientResponseException) e.getCause()).getStatusCode().is4xxClientError()) {
+                WebClientResponseException rejection = (WebClientResponseException) e.getCause();
+                rejectedCounter.increment(batch.size());
+                log.error("Stats server rejected {} hits with status {}, batch dropped: {}",
+                        batch.size(), rejection.getRawStatusCode(), rejection.getResponseBodyAsString());
+                return Delivery.REJECTED;
+            }
+            return retryLater(batch, e.getCause().getMessage());
+        } catch (TimeoutException | CancellationException e) {
+            request.cancel(true);
+            return retryLater(batch, "no response before shutdown timeout");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.cancel(true);
+            return retryLater(batch, "interrupted");
+        } catch (RuntimeException e) {
+            return retryLater(batch, e.getMessage());
+        } finally {
+            inFlight = null;
+        }
+    }
+
+    private Delivery retryLater(List<EndpointHitDto> batch, String reason) {
+        nextRetryNanos = System.nanoTime() + retryIntervalNanos;
+        log.error("Failed to send {} hits to the stats server: {}", batch.size(), reason);
+        return Delivery.FAILED;
+    }
+
+    private static HitSpool openSpool(String path, DataSize maxSize) {
+        if (path == null || path.isBlank()) {
+            return null;
+        }
+        try {
+            HitSpool spool = new HitSpool(Path.of(path), maxSize.toBytes());
+            log.info("Stats spool {} opened with {} undelivered bytes", path, spool.size());
+            return spool;
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to open stats spool {}, undeliverable hits will be dropped", path, e);
+            return null;
+        }
+    }
+
+    private enum Delivery {
+        SENT,
+        // Сервис статистики отклонил пакет, повторять отправку бесполезно
+        REJECTED,
+        // Сервис статистики недоступен, пакет нужно отправить позже
+        FAILED
+    }
+}
@@ -0,0 +1,83 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HitSpoolTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRecordsAreReadInOrderAfterReopen() throws Exception {
+        Path path = dir.resolve("hits.spool");
+        HitSpool spool = new HitSpool(path, 1024);
+        assertTrue(spool.append(bytes("first")));
+        assertTrue(spool.append(bytes("second")));
+        assertTrue(spool.append(bytes("third")));
+        assertEquals("first", string(spool.peek()));
+        spool.remove();
+        spool.close();
+
+        HitSpool reopened = new HitSpool(path, 1024);
+        assertEquals("second", string(reopened.peek()));
+        reopened.remove();
+        assertEquals("third", string(reopened.peek()));
+        reopened.remove();
+        assertTrue(reopened.isEmpty());
+        assertNull(reopened.peek());
+        reopened.close();
+    }
+
+    @Test
+    public void testCorruptedRecordIsDiscarded() throws Exception {
+        Path path = dir.resolve("hits.spool");
+        HitSpool spool = new HitSpool(path, 1024);
+        spool.append(bytes("first"));
+        spool.append(bytes("second"));
+        spool.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            // Первый байт данных первой записи: заголовок файла 16 байт и заголовок записи 8 байт
+            file.seek(24);
+            file.write('F');
+        }
+
+        HitSpool reopened = new HitSpool(path, 1024);
+        assertNull(reopened.peek());
+        assertTrue(reopened.isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    public void testSpaceIsReclaimedAndCapped() throws Exception {
+        HitSpool spool = new HitSpool(dir.resolve("hits.spool"), 64);
+        byte[] record = new byte[12];
+
+        assertTrue(spool.append(record));
+        assertTrue(spool.append(record));
+        assertFalse(spool.append(record));
+
+        spool.remove();
+        assertTrue(spool.append(record));
+        assertEquals(40, spool.size());
+        spool.close();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,55 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StatisticClientTest {
+
+    @Test
+    public void testGetViewsInOneRequest() {
+        AtomicInteger requests = new AtomicInteger();
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    requests.incrementAndGet();
+                    assertEquals(HttpMethod.POST, request.method());
+                    assertEquals("/stats/query", request.url().getPath());
+                    return Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body("[{\"app\": \"ewm-service\", \"uri\": \"/events/1\", \"hits\": 5}," +
+                                    "{\"app\": \"ewm-service\", \"uri\": \"/events/3\", \"hits\": 2}]")
+                            .build());
+                })
+                .build();
+        StatisticClient client = new StatisticClient(webClient, Mockito.mock(StatisticHitSender.class));
+
+        Map<Long, Long> views = client.getViews(List.of(1L, 2L, 3L), LocalDateTime.now().minusDays(1));
+
+        assertEquals(Map.of(1L, 5L, 2L, 0L, 3L, 2L), views);
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testGetViewsWithoutEventsSkipsRequest() {
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> Mono.error(new IllegalStateException("No request expected")))
+                .build();
+        StatisticClient client = new StatisticClient(webClient, Mockito.mock(StatisticHitSender.class));
+
+        assertEquals(Map.of(), client.getViews(List.of(), LocalDateTime.now().minusDays(1)));
+        assertEquals(Map.of(7L, 0L), client.getViews(List.of(7L), null));
+    }
+}
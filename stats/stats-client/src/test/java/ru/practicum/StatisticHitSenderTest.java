@@ -0,0 +1,338 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import ru.practicum.dto.statistics.EndpointHitDto;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StatisticHitSenderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicInteger requests;
+    private volatile HttpStatus responseStatus;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        requests = new AtomicInteger();
+        responseStatus = HttpStatus.CREATED;
+    }
+
+    @Test
+    public void testHitsAreCoalescedIntoBatches() throws Exception {
+        StatisticHitSender sender = createSender(webClient(), 10, 100, Duration.ofMillis(200));
+        sender.start();
+
+        for (int i = 0; i < 25; i++) {
+            sender.send(hit(i));
+        }
+        sender.stop();
+
+        assertEquals(25.0, meterRegistry.get("stats.client.hits.sent").counter().count());
+        assertEquals(3, requests.get());
+        assertEquals(0.0, meterRegistry.get("stats.client.queue.depth").gauge().value());
+    }
+
+    @Test
+    public void testSendDoesNotWaitForStatsServer() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        WebClient slowClient = WebClient.builder()
+                .exchangeFunction(request -> Mono.fromCallable(() -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    requests.incrementAndGet();
+                    return ClientResponse.create(HttpStatus.CREATED).build();
+                }))
+                .build();
+        StatisticHitSender sender = createSender(slowClient, 10, 100, Duration.ofMillis(50));
+        sender.start();
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            sender.send(hit(i));
+        }
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(1));
+
+        release.countDown();
+        sender.stop();
+        assertEquals(50.0, meterRegistry.get("stats.client.hits.sent").counter().count());
+    }
+
+    @Test
+    public void testStopFitsIntoOneShutdownTimeout() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        WebClient slowClient = WebClient.builder()
+                .exchangeFunction(request -> Mono.fromCallable(() -> {
+                    sending.countDown();
+                    Thread.sleep(1000);
+                    requests.incrementAndGet();
+                    return ClientResponse.create(HttpStatus.CREATED).build();
+                }))
+                .build();
+        StatisticHitSender sender = new StatisticHitSender(slowClient, objectMapper, meterRegistry, 1, 100,
+                Duration.ofMillis(10), Duration.ofMillis(500), "", DataSize.ofMegabytes(1), Duration.ZERO);
+        sender.start();
+        for (int i = 0; i < 20; i++) {
+            sender.send(hit(i));
+        }
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+        long started = System.nanoTime();
+        sender.stop();
+
+        // Поток занят отправкой дольше срока, поэтому оставшаяся очередь уже не досылается
+        assertTrue(System.nanoTime() - started < TimeUnit.MILLISECONDS.toNanos(900));
+        assertTrue(meterRegistry.get("stats.client.hits.dropped").tag("reason", "send_failed").counter().count() > 0);
+    }
+
+    @Test
+    public void testStuckSendIsAbandonedAtShutdownTimeout() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        WebClient stuckClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    sending.countDown();
+                    return Mono.never();
+                })
+                .build();
+        StatisticHitSender sender = new StatisticHitSender(stuckClient, objectMapper, meterRegistry, 1, 100,
+                Duration.ofMillis(10), Duration.ofMillis(300), "", DataSize.ofMegabytes(1), Duration.ZERO);
+        sender.start();
+        sender.send(hit(0));
+        sender.send(hit(1));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+        long started = System.nanoTime();
+        sender.stop();
+
+        // Ответ на отправку не приходит никогда, но остановка укладывается в срок и пакеты не теряются молча
+        assertTrue(System.nanoTime() - started < TimeUnit.MILLISECONDS.toNanos(600));
+        awaitTrue(() -> meterRegistry.get("stats.client.hits.dropped").tag("reason", "send_failed")
+                .counter().count() == 2.0);
+    }
+
+    @Test
+    public void testOverflowAndFailedBatchesAreDropped() throws Exception {
+        responseStatus = HttpStatus.SERVICE_UNAVAILABLE;
+        StatisticHitSender sender = createSender(webClient(), 10, 5, Duration.ofMillis(50));
+
+        for (int i = 0; i < 8; i++) {
+            sender.send(hit(i));
+        }
+        assertEquals(3.0, meterRegistry.get("stats.client.hits.dropped").tag("reason", "overflow").counter().count());
+
+        sender.start();
+        sender.stop();
+        assertEquals(5.0, meterRegistry.get("stats.client.hits.dropped").tag("reason", "send_failed").counter().count());
+        assertEquals(0.0, meterRegistry.get("stats.client.hits.sent").counter().count());
+    }
+
+    @Test
+    public void testUndeliveredHitsAreSpooledAndReplayedAfterRestart(@TempDir Path dir) throws Exception {
+        String spoolPath = dir.resolve("hits.spool").toString();
+        responseStatus = HttpStatus.SERVICE_UNAVAILABLE;
+        StatisticHitSender sender = createSender(webClient(), meterRegistry, 2, 100, spoolPath);
+        sender.start();
+        for (int i = 0; i < 5; i++) {
+            sender.send(hit(i));
+        }
+        sender.stop();
+
+        assertEquals(5.0, meterRegistry.get("stats.client.hits.spooled").counter().count());
+        assertEquals(0.0, meterRegistry.get("stats.client.hits.sent").counter().count());
+        assertEquals(0.0, meterRegistry.get("stats.client.hits.dropped").tag("reason", "send_failed").counter().count());
+
+        responseStatus = HttpStatus.CREATED;
+        SimpleMeterRegistry restartedRegistry = new SimpleMeterRegistry();
+        StatisticHitSender restarted = createSender(webClient(), restartedRegistry, 2, 100, spoolPath);
+        restarted.start();
+        awaitTrue(() -> restartedRegistry.get("stats.client.hits.sent").counter().count() == 5.0);
+        assertEquals(0.0, restartedRegistry.get("stats.client.spool.size").gauge().value());
+        restarted.stop();
+    }
+
+    @Test
+    public void testRejectedBatchesAreDroppedInsteadOfSpooled(@TempDir Path dir) throws Exception {
+        String spoolPath = dir.resolve("hits.spool").toString();
+        responseStatus = HttpStatus.SERVICE_UNAVAILABLE;
+        StatisticHitSender sender = createSender(webClient(), meterRegistry, 2, 100, spoolPath);
+        sender.start();
+        for (int i = 0; i < 4; i++) {
+            sender.send(hit(i));
+        }
+        sender.stop();
+        assertEquals(4.0, meterRegistry.get("stats.client.hits.spooled").counter().count());
+
+        // Сохранённые пакеты и новые записи отклоняются сервером: они отбрасываются и не блокируют очередь
+        responseStatus = HttpStatus.BAD_REQUEST;
+        SimpleMeterRegistry restartedRegistry = new SimpleMeterRegistry();
+        StatisticHitSender restarted = createSender(webClient(), restartedRegistry, 2, 100, spoolPath);
+        restarted.start();
+        awaitTrue(() -> restartedRegistry.get("stats.client.spool.size").gauge().value() == 0.0);
+        restarted.send(hit(4));
+        restarted.send(hit(5));
+        restarted.stop();
+
+        assertEquals(6.0, restartedRegistry.get("stats.client.hits.dropped").tag("reason", "rejected").counter().count());
+        assertEquals(0.0, restartedRegistry.get("stats.client.hits.spooled").counter().count());
+        assertEquals(0.0, restartedRegistry.get("stats.client.hits.sent").counter().count());
+    }
+
+    @Test
+    public void testSpoolReplayInterruptedByStopLosesAndRepeatsNothing(@TempDir Path dir) throws Exception {
+        String spoolPath = dir.resolve("hits.spool").toString();
+        responseStatus = HttpStatus.SERVICE_UNAVAILABLE;
+        StatisticHitSender sender = createSender(webClient(), meterRegistry, 1, 100, spoolPath);
+        sender.start();
+        for (int i = 0; i < 5; i++) {
+            sender.send(hit(i));
+        }
+        sender.stop();
+        assertEquals(5.0, meterRegistry.get("stats.client.hits.spooled").counter().count());
+
+        // Остановка наступает, пока поток досылает файл и ждёт ответа дольше срока, а в очереди есть новая запись
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch replaying = new CountDownLatch(1);
+        WebClient slowClient = WebClient.builder()
+                .exchangeFunction(request -> Mono.fromCallable(() -> {
+                    List<String> uris = uris(request);
+                    replaying.countDown();
+                    Thread.sleep(300);
+                    delivered.addAll(uris);
+                    return ClientResponse.create(HttpStatus.CREATED).build();
+                }))
+                .build();
+        StatisticHitSender stopped = new StatisticHitSender(slowClient, objectMapper, new SimpleMeterRegistry(), 1, 100,
+                Duration.ofMillis(20), Duration.ofMillis(100), spoolPath, DataSize.ofMegabytes(1), Duration.ZERO);
+        stopped.start();
+        assertTrue(replaying.await(5, TimeUnit.SECONDS));
+        stopped.send(hit(5));
+        stopped.stop();
+        // После остановки поток уже ничего не отправляет и не меняет файл
+        int deliveredOnStop = delivered.size();
+        Thread.sleep(500);
+        assertEquals(deliveredOnStop, delivered.size());
+
+        WebClient fastClient = WebClient.builder()
+                .exchangeFunction(request -> Mono.fromCallable(() -> {
+                    delivered.addAll(uris(request));
+                    return ClientResponse.create(HttpStatus.CREATED).build();
+                }))
+                .build();
+        SimpleMeterRegistry restartedRegistry = new SimpleMeterRegistry();
+        StatisticHitSender restarted = new StatisticHitSender(fastClient, objectMapper, restartedRegistry, 1, 100,
+                Duration.ofMillis(20), Duration.ofSeconds(5), spoolPath, DataSize.ofMegabytes(1), Duration.ZERO);
+        restarted.start();
+        awaitTrue(() -> restartedRegistry.get("stats.client.spool.size").gauge().value() == 0.0);
+        restarted.stop();
+
+        assertEquals(List.of("/events/0", "/events/1", "/events/2", "/events/3", "/events/4", "/events/5"),
+                delivered.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testSpoolIsCapped(@TempDir Path dir) throws Exception {
+        responseStatus = HttpStatus.SERVICE_UNAVAILABLE;
+        StatisticHitSender sender = new StatisticHitSender(webClient(), objectMapper, meterRegistry, 1, 100,
+                Duration.ofMillis(10), Duration.ofSeconds(5), dir.resolve("hits.spool").toString(),
+                DataSize.ofBytes(256), Duration.ofSeconds(30));
+
+        for (int i = 0; i < 10; i++) {
+            sender.send(hit(i));
+        }
+        sender.start();
+        sender.stop();
+
+        double spooled = meterRegistry.get("stats.client.hits.spooled").counter().count();
+        double dropped = meterRegistry.get("stats.client.hits.dropped").tag("reason", "spool_full").counter().count();
+        assertTrue(spooled > 0 && dropped > 0);
+        assertEquals(10.0, spooled + dropped);
+        assertTrue(meterRegistry.get("stats.client.spool.size").gauge().value() <= 256);
+    }
+
+    private void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition not met in 5 seconds");
+            Thread.sleep(10);
+        }
+    }
+
+    private List<String> uris(ClientRequest request) throws Exception {
+        MockClientHttpRequest body = new MockClientHttpRequest(request.method(), request.url());
+        request.body().insert(body, new BodyInserter.Context() {
+            @Override
+            public List<HttpMessageWriter<?>> messageWriters() {
+                return ExchangeStrategies.withDefaults().messageWriters();
+            }
+
+            @Override
+            public Optional<ServerHttpRequest> serverRequest() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Map<String, Object> hints() {
+                return Map.of();
+            }
+        }).block();
+        List<EndpointHitDto> hits = objectMapper.readValue(body.getBodyAsString().block(), new TypeReference<>() {
+        });
+        return hits.stream().map(EndpointHitDto::getUri).collect(Collectors.toList());
+    }
+
+    private WebClient webClient() {
+        return WebClient.builder()
+                .exchangeFunction(request -> {
+                    requests.incrementAndGet();
+                    return Mono.just(ClientResponse.create(responseStatus).build());
+                })
+                .build();
+    }
+
+    private StatisticHitSender createSender(WebClient webClient, int batchSize, int capacity, Duration flushInterval) {
+        return new StatisticHitSender(webClient, objectMapper, meterRegistry, batchSize, capacity, flushInterval,
+                Duration.ofSeconds(5), "", DataSize.ofMegabytes(1), Duration.ZERO);
+    }
+
+    private StatisticHitSender createSender(WebClient webClient, MeterRegistry registry, int batchSize, int capacity,
+                                            String spoolPath) {
+        return new StatisticHitSender(webClient, objectMapper, registry, batchSize, capacity, Duration.ofMillis(20),
+                Duration.ofSeconds(5), spoolPath, DataSize.ofMegabytes(1), Duration.ZERO);
+    }
+
+    private EndpointHitDto hit(int i) {
+        return new EndpointHitDto("ewm-service", "/events/" + i, "127.0.0.1", LocalDateTime.now());
+    }
+}
@@ -0,0 +1,56 @@
+package ru.practicum;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * Ключ агрегата статистики: приложение, uri и начало интервала.
+ * Ключи упорядочены, чтобы параллельные транзакции блокировали строки агрегатов в одном порядке.
+ */
+final class BucketKey implements Comparable<BucketKey> {
+    private static final Comparator<BucketKey> ORDER = Comparator
+            .comparing((BucketKey key) -> key.app)
+            .thenComparing(key -> key.uri)
+            .thenComparing(key -> key.bucket);
+
+    private final String app;
+    private final String uri;
+    private final LocalDateTime bucket;
+
+    BucketKey(String app, String uri, LocalDateTime bucket) {
+        this.app = app;
+        this.uri = uri;
+        this.bucket = bucket;
+    }
+
+    String getApp() {
+        return app;
+    }
+
+    String getUri() {
+        return uri;
+    }
+
+    LocalDateTime getBucket() {
+        return bucket;
+    }
+
+    @Override
+    public int compareTo(BucketKey other) {
+        return ORDER.compare(this, other);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BucketKey)) return false;
+        BucketKey key = (BucketKey) o;
+        return app.equals(key.app) && uri.equals(key.uri) && bucket.equals(key.bucket);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(app, uri, bucket);
+    }
+}
@@ -0,0 +1,41 @@
+package ru.practicum;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Пакетная запись статистики через JDBC.
+ * Hibernate не умеет батчить вставки в таблицу с IDENTITY-ключом,
+ * поэтому массовая загрузка идёт мимо {@link ViewStatsRepository}.
+ */
+@Repository
+public class ClientStatisticsJdbcRepository {
+    private static final String INSERT_SQL = "INSERT INTO Statistics (app, uri, ip, timestamp) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public ClientStatisticsJdbcRepository(JdbcTemplate jdbcTemplate,
+                                          @Value("${stats.hits.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    public void batchInsert(List<ClientStatistics> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, records, batchSize, (ps, record) -> {
+            ps.setString(1, record.getApp());
+            ps.setString(2, record.getUri());
+            ps.setString(3, record.getIp());
+            ps.setTimestamp(4, record.getTimestamp() == null ? null : Timestamp.valueOf(record.getTimestamp()));
+        });
+    }
+}
@@ -0,0 +1,36 @@
+package ru.practicum;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Единая точка записи статистики: сырые записи, агрегаты и скетчи уникальных ip по ним сохраняются в одной транзакции.
+ */
+@Component
+public class ClientStatisticsWriter {
+    private final ClientStatisticsJdbcRepository jdbcRepository;
+    private final StatisticsRollupRepository rollupRepository;
+    private final StatisticsSketchRepository sketchRepository;
+
+    @Autowired
+    public ClientStatisticsWriter(ClientStatisticsJdbcRepository jdbcRepository,
+                                  StatisticsRollupRepository rollupRepository,
+                                  StatisticsSketchRepository sketchRepository) {
+        this.jdbcRepository = jdbcRepository;
+        this.rollupRepository = rollupRepository;
+        this.sketchRepository = sketchRepository;
+    }
+
+    @Transactional
+    public void write(List<ClientStatistics> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        jdbcRepository.batchInsert(records);
+        rollupRepository.addHits(records);
+        sketchRepository.addHits(records);
+    }
+}
@@ -0,0 +1,151 @@
+package ru.practicum;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Буфер отложенной записи статистики (write-behind).
+ * Запись попадает в ограниченную очередь и возвращается сразу, фоновый поток сбрасывает очередь в БД пакетами:
+ * как только набралось stats.hits.batch-size записей или самая старая запись в пакете ждёт дольше
+ * stats.write-behind.flush-interval. Если очередь переполнена, запись сохраняется синхронно,
+ * при остановке приложения очередь дописывается в БД полностью.
+ */
+@Component
+@Slf4j
+public class HitWriteBehindBuffer {
+    private final ClientStatisticsWriter writer;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<ClientStatistics> queue;
+    private final Timer flushTimer;
+    private final Counter overflowCounter;
+    private final Counter droppedCounter;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    @Autowired
+    public HitWriteBehindBuffer(ClientStatisticsWriter writer,
+                                MeterRegistry meterRegistry,
+                                @Value("${stats.write-behind.enabled:false}") boolean enabled,
+                                @Value("${stats.hits.batch-size:500}") int batchSize,
+                                @Value("${stats.write-behind.capacity:10000}") int capacity,
+                                @Value("${stats.write-behind.flush-interval:200ms}") Duration flushInterval) {
+        this.writer = writer;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        Gauge.builder("stats.write.behind.queue.depth", queue, BlockingQueue::size)
+                .description("Hits waiting to be written to the database")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("stats.write.behind.flush")
+                .description("Time spent writing one batch of buffered hits")
+                .register(meterRegistry);
+        this.overflowCounter = Counter.builder("stats.write.behind.overflow")
+                .description("Hits written synchronously because the buffer was full")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("stats.write.behind.dropped")
+                .description("Hits lost because a batch could not be written")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::runFlusher, "stats-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Write-behind buffer started with capacity {}, batch size {}, flush interval {} ms",
+                queue.remainingCapacity(), batchSize, TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void add(ClientStatistics record) {
+        if (!queue.offer(record)) {
+            overflowCounter.increment();
+            write(List.of(record));
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        flusher.interrupt();
+        flusher.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 10_000);
+
+        List<ClientStatistics> rest = new ArrayList<>(queue.size());
+        queue.drainTo(rest);
+        for (int from = 0; from < rest.size(); from += batchSize) {
+            write(rest.subList(from, Math.min(rest.size(), from + batchSize)));
+        }
+        log.info("Write-behind buffer stopped, {} buffered hits flushed on shutdown", rest.size());
+    }
+
+    private void runFlusher() {
+        List<ClientStatistics> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                ClientStatistics first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    ClientStatistics next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<ClientStatistics> batch) {
+        try {
+            flushTimer.record(() -> writer.write(batch));
+        } catch (RuntimeException e) {
+            droppedCounter.increment(batch.size());
+            log.error("Failed to write {} buffered hits", batch.size(), e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package ru.practicum;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.dto.statistics.ViewStatsDto;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Агрегаты количества обращений по минутам и по часам в разрезе (app, uri).
+ * Агрегаты пополняются в той же транзакции, что и сырая статистика, и позволяют считать неуникальные
+ * обращения за выровненные по минутам и часам интервалы без сканирования таблицы Statistics.
+ */
+@Repository
+public class StatisticsRollupRepository {
+
+    public enum Granularity {
+        MINUTE("statistics_minute", ChronoUnit.MINUTES),
+        HOUR("statistics_hour", ChronoUnit.HOURS);
+
+        private final String table;
+        private final ChronoUnit unit;
+
+        Granularity(String table, ChronoUnit unit) {
+            this.table = table;
+            this.unit = unit;
+        }
+
+        public ChronoUnit getUnit() {
+            return unit;
+        }
+    }
+
+    private static final String POSTGRES_UPSERT = "INSERT INTO %s AS t (app, uri, bucket, hits) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (app, uri, bucket) DO UPDATE SET hits = t.hits + EXCLUDED.hits";
+
+    private static final String MERGE_UPSERT = "MERGE INTO %s t " +
+            "USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS TIMESTAMP), CAST(? AS BIGINT))) " +
+            "s (app, uri, bucket, hits) " +
+            "ON t.app = s.app AND t.uri = s.uri AND t.bucket = s.bucket " +
+            "WHEN MATCHED THEN UPDATE SET hits = t.hits + s.hits " +
+            "WHEN NOT MATCHED THEN INSERT (app, uri, bucket, hits) VALUES (s.app, s.uri, s.bucket, s.hits)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final String upsertTemplate;
+
+    @Autowired
+    public StatisticsRollupRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                                      @Value("${stats.hits.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        String database = jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        this.upsertTemplate = "PostgreSQL".equalsIgnoreCase(database) ? POSTGRES_UPSERT : MERGE_UPSERT;
+    }
+
+    public void addHits(List<ClientStatistics> records) {
+        for (Granularity granularity : Granularity.values()) {
+            Map<BucketKey, Long> counts = new TreeMap<>();
+            for (ClientStatistics record : records) {
+                if (record.getTimestamp() == null || record.getApp() == null || record.getUri() == null) {
+                    continue;
+                }
+                BucketKey key = new BucketKey(record.getApp(), record.getUri(),
+                        record.getTimestamp().truncatedTo(granularity.unit));
+                counts.merge(key, 1L, Long::sum);
+            }
+            if (counts.isEmpty()) {
+                continue;
+            }
+            jdbcTemplate.getJdbcTemplate().batchUpdate(String.format(upsertTemplate, granularity.table),
+                    new ArrayList<>(counts.entrySet()), batchSize, (ps, entry) -> {
+                        ps.setString(1, entry.getKey().getApp());
+                        ps.setString(2, entry.getKey().getUri());
+                        ps.setTimestamp(3, Timestamp.valueOf(entry.getKey().getBucket()));
+                        ps.setLong(4, entry.getValue());
+                    });
+        }
+    }
+
+    /**
+     * Сумма обращений по агрегатам с бакетами из полуоткрытого интервала [from, to).
+     * Пустой список uris означает все uri.
+     */
+    public List<ViewStatsDto> sumHits(Granularity granularity, LocalDateTime from, LocalDateTime to,
+                                      List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = "SELECT app, uri, SUM(hits) AS hits FROM " + granularity.table + " " +
+                "WHERE bucket >= :from AND bucket < :to ";
+        if (!uris.isEmpty()) {
+            sql += "AND uri IN (:uris) ";
+            params.addValue("uris", uris);
+        }
+        sql += "GROUP BY app, uri";
+        return jdbcTemplate.query(sql, params, (rs, rowNum) ->
+                new ViewStatsDto(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+    }
+}
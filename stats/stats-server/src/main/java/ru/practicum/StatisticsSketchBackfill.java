@@ -0,0 +1,40 @@
+package ru.practicum;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Первичное построение скетчей уникальных ip по уже накопленной статистике.
+ * Выполняется при старте, пока таблица скетчей пуста, до того как сервер начнёт принимать запросы.
+ */
+@Component
+@Slf4j
+public class StatisticsSketchBackfill {
+    private final StatisticsSketchRepository sketchRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public StatisticsSketchBackfill(StatisticsSketchRepository sketchRepository,
+                                    PlatformTransactionManager transactionManager) {
+        this.sketchRepository = sketchRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void backfill() {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!sketchRepository.isEmpty()) {
+                return;
+            }
+            long built = sketchRepository.backfill();
+            if (built > 0) {
+                log.info("Built {} hourly unique ip sketches from existing statistics", built);
+            }
+        });
+    }
+}
@@ -0,0 +1,52 @@
+package ru.practicum;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Сворачивает строки скетчей одного часа, накопленные записями статистики, не чаще раза в
+ * stats.sketches.compaction-interval. Каждая порция ключей сворачивается в своей транзакции,
+ * чтобы не держать блокировки долго.
+ */
+@Component
+@Slf4j
+public class StatisticsSketchCompactor {
+    private final StatisticsSketchRepository sketchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public StatisticsSketchCompactor(StatisticsSketchRepository sketchRepository,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${stats.hits.batch-size:500}") int batchSize) {
+        this.sketchRepository = sketchRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return количество свёрнутых ключей
+     */
+    @Scheduled(fixedDelayString = "${stats.sketches.compaction-interval:PT1M}")
+    public long compact() {
+        long compacted = 0;
+        try {
+            Integer keys;
+            do {
+                keys = transactionTemplate.execute(status -> sketchRepository.compact());
+                compacted += keys == null ? 0 : keys;
+            } while (keys != null && keys >= batchSize);
+        } catch (RuntimeException e) {
+            log.error("Failed to compact unique ip sketches", e);
+        }
+        if (compacted > 0) {
+            log.debug("Compacted unique ip sketches of {} hours", compacted);
+        }
+        return compacted;
+    }
+}
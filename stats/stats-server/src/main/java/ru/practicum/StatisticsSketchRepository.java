@@ -0,0 +1,197 @@
+package ru.practicum;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Почасовые скетчи {@link HyperLogLog} уникальных ip в разрезе (app, uri).
+ * Скетч за интервал из целых часов получается слиянием почасовых скетчей,
+ * что заменяет COUNT(DISTINCT ip) по всем сырым записям интервала.
+ * Каждая запись статистики добавляет свои скетчи отдельными строками без чтения и блокировки сохранённых,
+ * поэтому одновременные записи по одному uri не ждут друг друга. Строки одного часа сливаются при чтении,
+ * а в фоне {@link StatisticsSketchCompactor} сворачивает их в одну.
+ */
+@Repository
+public class StatisticsSketchRepository {
+    private static final String INSERT = "INSERT INTO statistics_hll (app, uri, bucket, sketch) VALUES (?, ?, ?, ?)";
+
+    private static final String SELECT_FRAGMENTED = "SELECT app, uri, bucket FROM statistics_hll " +
+            "GROUP BY app, uri, bucket HAVING COUNT(*) > 1 LIMIT ?";
+
+    private static final String SELECT_PARTS = "SELECT id, sketch FROM statistics_hll " +
+            "WHERE app = ? AND uri = ? AND bucket = ?";
+
+    private static final String BACKFILL_SELECT = "SELECT DISTINCT app, uri, DATE_TRUNC('HOUR', timestamp) AS bucket, ip " +
+            "FROM Statistics " +
+            "WHERE timestamp IS NOT NULL AND app IS NOT NULL AND uri IS NOT NULL AND ip IS NOT NULL " +
+            "ORDER BY app, uri, bucket";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public StatisticsSketchRepository(NamedParameterJdbcTemplate jdbcTemplate,
+                                      @Value("${stats.hits.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    public void addHits(List<ClientStatistics> records) {
+        Map<BucketKey, HyperLogLog> sketches = new TreeMap<>();
+        for (ClientStatistics record : records) {
+            if (record.getTimestamp() == null || record.getApp() == null || record.getUri() == null
+                    || record.getIp() == null) {
+                continue;
+            }
+            BucketKey key = new BucketKey(record.getApp(), record.getUri(),
+                    record.getTimestamp().truncatedTo(ChronoUnit.HOURS));
+            sketches.computeIfAbsent(key, k -> new HyperLogLog()).offer(record.getIp());
+        }
+        addSketches(sketches);
+    }
+
+    /**
+     * Сохраняет скетчи новыми строками одним пакетом. Слияние с уже сохранёнными скетчами того же часа
+     * откладывается до чтения или до {@link #compact()}.
+     */
+    void addSketches(Map<BucketKey, HyperLogLog> sketches) {
+        if (sketches.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT, new ArrayList<>(sketches.entrySet()), batchSize,
+                (ps, entry) -> {
+                    ps.setString(1, entry.getKey().getApp());
+                    ps.setString(2, entry.getKey().getUri());
+                    ps.setTimestamp(3, Timestamp.valueOf(entry.getKey().getBucket()));
+                    ps.setBytes(4, entry.getValue().toBytes());
+                });
+    }
+
+    /**
+     * Сворачивает строки одного часа в одну для не более чем stats.hits.batch-size ключей.
+     * Удаляются только прочитанные строки, поэтому скетчи, добавленные во время слияния, сохраняются.
+     * Если два процесса свернут одни и те же строки, останется две одинаковые строки: слияние идемпотентно,
+     * и оценка от этого не меняется. Должен вызываться в транзакции.
+     *
+     * @return количество свёрнутых ключей
+     */
+    int compact() {
+        JdbcTemplate template = jdbcTemplate.getJdbcTemplate();
+        List<BucketKey> keys = template.query(SELECT_FRAGMENTED, (rs, rowNum) -> new BucketKey(rs.getString("app"),
+                rs.getString("uri"), rs.getTimestamp("bucket").toLocalDateTime()), batchSize);
+
+        Map<BucketKey, HyperLogLog> merged = new TreeMap<>();
+        List<Long> ids = new ArrayList<>();
+        for (BucketKey key : keys) {
+            HyperLogLog sketch = new HyperLogLog();
+            template.query(SELECT_PARTS, (RowCallbackHandler) rs -> {
+                ids.add(rs.getLong("id"));
+                sketch.merge(HyperLogLog.fromBytes(rs.getBytes("sketch")));
+            }, key.getApp(), key.getUri(), Timestamp.valueOf(key.getBucket()));
+            merged.put(key, sketch);
+        }
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            jdbcTemplate.update("DELETE FROM statistics_hll WHERE id IN (:ids)",
+                    new MapSqlParameterSource("ids", ids.subList(from, Math.min(ids.size(), from + batchSize))));
+        }
+        addSketches(merged);
+        return keys.size();
+    }
+
+    /**
+     * Слияние почасовых скетчей с бакетами из полуоткрытого интервала [from, to) по каждой паре (app, uri).
+     * Пустой список uris означает все uri.
+     */
+    public Map<List<String>, HyperLogLog> mergeSketches(LocalDateTime from, LocalDateTime to, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = "SELECT app, uri, sketch FROM statistics_hll WHERE bucket >= :from AND bucket < :to";
+        if (!uris.isEmpty()) {
+            sql += " AND uri IN (:uris)";
+            params.addValue("uris", uris);
+        }
+        Map<List<String>, HyperLogLog> sketches = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, params, (RowCallbackHandler) rs -> {
+            HyperLogLog sketch = HyperLogLog.fromBytes(rs.getBytes("sketch"));
+            sketches.merge(Arrays.asList(rs.getString("app"), rs.getString("uri")), sketch, (merged, next) -> {
+                merged.merge(next);
+                return merged;
+            });
+        });
+        return sketches;
+    }
+
+    /**
+     * Добавляет в скетчи ip из сырой статистики за полуоткрытый интервал [from, to).
+     * Используется для неполных часов по краям запрошенного интервала.
+     */
+    public void offerRawIps(Map<List<String>, HyperLogLog> sketches, LocalDateTime from, LocalDateTime to,
+                            List<String> uris) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = "SELECT DISTINCT app, uri, ip FROM Statistics " +
+                "WHERE timestamp >= :from AND timestamp < :to AND ip IS NOT NULL " +
+                "AND app IS NOT NULL AND uri IS NOT NULL";
+        if (!uris.isEmpty()) {
+            sql += " AND uri IN (:uris)";
+            params.addValue("uris", uris);
+        }
+        jdbcTemplate.query(sql, params, (RowCallbackHandler) rs ->
+                sketches.computeIfAbsent(Arrays.asList(rs.getString("app"), rs.getString("uri")),
+                        key -> new HyperLogLog()).offer(rs.getString("ip")));
+    }
+
+    public boolean isEmpty() {
+        return !Boolean.TRUE.equals(jdbcTemplate.getJdbcTemplate()
+                .queryForObject("SELECT EXISTS (SELECT 1 FROM statistics_hll)", Boolean.class));
+    }
+
+    /**
+     * Строит почасовые скетчи по уже накопленной сырой статистике.
+     * Строки читаются курсором в порядке ключа, поэтому в памяти находятся скетчи не более чем
+     * stats.hits.batch-size ключей одновременно.
+     *
+     * @return количество построенных скетчей
+     */
+    long backfill() {
+        Map<BucketKey, HyperLogLog> pending = new TreeMap<>();
+        long[] built = {0};
+        jdbcTemplate.getJdbcTemplate().query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(BACKFILL_SELECT);
+            statement.setFetchSize(batchSize);
+            return statement;
+        }, (RowCallbackHandler) rs -> {
+            BucketKey key = new BucketKey(rs.getString("app"), rs.getString("uri"),
+                    rs.getTimestamp("bucket").toLocalDateTime());
+            if (!pending.containsKey(key) && pending.size() >= batchSize) {
+                addSketches(pending);
+                built[0] += pending.size();
+                pending.clear();
+            }
+            pending.computeIfAbsent(key, k -> new HyperLogLog()).offer(rs.getString("ip"));
+        });
+        addSketches(pending);
+        return built[0] + pending.size();
+    }
+}
@@ -1,9 +1,13 @@
 package ru.practicum;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -11,23 +15,36 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import ru.practicum.dto.statistics.EndpointHitDto;
+import ru.practicum.dto.statistics.HitsBatchResultDto;
+import ru.practicum.dto.statistics.StatsQueryDto;
 import ru.practicum.dto.statistics.ViewStatsDto;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import javax.validation.ValidationException;
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 @RestController
 @Slf4j
 public class StatsController {
+    private static final String NDJSON = "application/x-ndjson";
+
     private final StatsService service;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
     private final String pattern = "yyyy-MM-dd HH:mm:ss";
 
     @Autowired
-    public StatsController(StatsService service) {
+    public StatsController(StatsService service, ObjectMapper objectMapper,
+                           @Value("${stats.hits.batch-size:500}") int batchSize) {
         this.service = service;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
     }
 
     /**
@@ -47,6 +64,61 @@ public class StatsController {
         return ResponseEntity.status(HttpStatus.CREATED).body("Информация сохранена");
     }
 
+    /**
+     * Пакетное сохранение информации о запросах к эндпоинтам.
+     * Endpoint: POST /hits
+     * Все корректные записи пакета сохраняются одной транзакцией пакетной вставкой,
+     * некорректные записи пропускаются и учитываются в поле rejected.
+     *
+     * @param hits список объектов {@link EndpointHitDto}
+     * @return {@link ResponseEntity} содержащий {@link HitsBatchResultDto} и статус ответа {@link HttpStatus#CREATED}
+     */
+    @PostMapping(value = "/hits", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<HitsBatchResultDto> createRecords(@RequestBody List<EndpointHitDto> hits) {
+        log.debug("Endpoint POST /hits has been reached with {} hits", hits.size());
+        HitsBatchResultDto result = service.createRecords(hits);
+        log.info("Batch of hits saved: {} accepted, {} rejected", result.getAccepted(), result.getRejected());
+        return ResponseEntity.status(HttpStatus.CREATED).body(result);
+    }
+
+    /**
+     * Потоковое сохранение информации о запросах к эндпоинтам в формате NDJSON (одна запись на строку).
+     * Endpoint: POST /hits
+     * Тело читается построчно и сохраняется пакетами по stats.hits.batch-size записей,
+     * каждый пакет в своей транзакции, поэтому размер тела не ограничен памятью сервера.
+     * Строки, которые не удалось разобрать или провалидировать, учитываются в поле rejected.
+     *
+     * @param request запрос с телом в формате application/x-ndjson
+     * @return {@link ResponseEntity} содержащий {@link HitsBatchResultDto} и статус ответа {@link HttpStatus#CREATED}
+     */
+    @PostMapping(value = "/hits", consumes = NDJSON)
+    public ResponseEntity<HitsBatchResultDto> createRecordsStream(HttpServletRequest request) throws IOException {
+        log.debug("Endpoint POST /hits has been reached with NDJSON stream");
+        HitsBatchResultDto result = new HitsBatchResultDto();
+        List<EndpointHitDto> batch = new ArrayList<>(batchSize);
+        BufferedReader reader = request.getReader();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                batch.add(objectMapper.readValue(line, EndpointHitDto.class));
+            } catch (JsonProcessingException e) {
+                result.setRejected(result.getRejected() + 1);
+            }
+            if (batch.size() >= batchSize) {
+                result.add(service.createRecords(batch));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            result.add(service.createRecords(batch));
+        }
+        log.info("Stream of hits saved: {} accepted, {} rejected", result.getAccepted(), result.getRejected());
+        return ResponseEntity.status(HttpStatus.CREATED).body(result);
+    }
+
     /**
      * Получение статистики по посещениям.
      * Endpoint: GET /hit
@@ -61,6 +133,8 @@ public class StatsController {
      * @param uris   Список uri для которых нужно выгрузить статистику
      * @param unique Нужно ли учитывать только уникальные посещения
      *               (только с уникальным ip)
+     * @param exact  Считать уникальные посещения точно. По умолчанию число уникальных ip
+     *               оценивается по скетчам HyperLogLog с относительной ошибкой около 1.6%
      * @return {@link ResponseEntity} содержащий список добавленных объектов {@link ViewStatsDto} и статус ответа {@link HttpStatus#OK}
      */
     @GetMapping("/stats")
@@ -68,18 +142,43 @@ public class StatsController {
             @RequestParam(value = "start") @DateTimeFormat(pattern = pattern) LocalDateTime start,
             @RequestParam(value = "end") @DateTimeFormat(pattern = pattern) LocalDateTime end,
             @RequestParam(value = "uris", required = false) Optional<List<String>> uris,
-            @RequestParam(value = "unique", defaultValue = "false") boolean unique) {
+            @RequestParam(value = "unique", defaultValue = "false") boolean unique,
+            @RequestParam(value = "exact", defaultValue = "false") boolean exact) {
 
         if (end.isBefore(start)) {
             throw new ValidationException("Invalid input: 'end' date is before 'start' date");
         }
 
-        log.debug("Endpoint GET /stats has been reached with start: {}, end: {}, uris: {}, unique: {}",
-                start, end, uris.orElse(List.of("Empty")), unique);
+        log.debug("Endpoint GET /stats has been reached with start: {}, end: {}, uris: {}, unique: {}, exact: {}",
+                start, end, uris.orElse(List.of("Empty")), unique, exact);
 
-        List<ViewStatsDto> stats = service.getStatistics(start, end, uris.orElse(List.of()), unique);
+        List<ViewStatsDto> stats = service.getStatistics(start, end, uris.orElse(List.of()), unique, exact);
         log.info("Statistics about {} uris fetched successfully", uris.orElse(List.of("all")));
         return ResponseEntity.ok(stats);
     }
-}
 
+    /**
+     * Получение статистики по посещениям для большого списка uri.
+     * Endpoint: POST /stats/query
+     * То же, что GET /stats, но параметры передаются в теле запроса,
+     * поэтому список из сотен uri не упирается в ограничение длины URL.
+     *
+     * @param query объект {@link StatsQueryDto} с интервалом, списком uri и флагами unique и exact
+     * @return {@link ResponseEntity} содержащий список объектов {@link ViewStatsDto} и статус ответа {@link HttpStatus#OK}
+     */
+    @PostMapping("/stats/query")
+    public ResponseEntity<List<ViewStatsDto>> queryStatistics(@RequestBody @Valid StatsQueryDto query) {
+        if (query.getEnd().isBefore(query.getStart())) {
+            throw new ValidationException("Invalid input: 'end' date is before 'start' date");
+        }
+        List<String> uris = query.getUris() == null ? List.of() : query.getUris();
+
+        log.debug("Endpoint POST /stats/query has been reached with start: {}, end: {}, {} uris, unique: {}, exact: {}",
+                query.getStart(), query.getEnd(), uris.size(), query.isUnique(), query.isExact());
+
+        List<ViewStatsDto> stats = service.getStatistics(query.getStart(), query.getEnd(), uris,
+                query.isUnique(), query.isExact());
+        log.info("Statistics about {} uris fetched successfully", uris.size());
+        return ResponseEntity.ok(stats);
+    }
+}
@@ -1,6 +1,7 @@
 package ru.practicum;
 
 import ru.practicum.dto.statistics.EndpointHitDto;
+import ru.practicum.dto.statistics.HitsBatchResultDto;
 import ru.practicum.dto.statistics.ViewStatsDto;
 
 import java.time.LocalDateTime;
@@ -9,5 +10,8 @@ import java.util.List;
 public interface StatsService {
     void createRecord(EndpointHitDto newData);
 
-    List<ViewStatsDto> getStatistics(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
+    HitsBatchResultDto createRecords(List<EndpointHitDto> newData);
+
+    List<ViewStatsDto> getStatistics(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                     boolean unique, boolean exact);
 }
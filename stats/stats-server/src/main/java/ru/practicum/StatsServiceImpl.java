@@ -2,49 +2,183 @@ package ru.practicum;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import ru.practicum.StatisticsRollupRepository.Granularity;
 import ru.practicum.dto.statistics.EndpointHitDto;
+import ru.practicum.dto.statistics.HitsBatchResultDto;
 import ru.practicum.dto.statistics.ViewStatsDto;
 
+import javax.validation.Validator;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class StatsServiceImpl implements StatsService {
     private final ViewStatsRepository repository;
+    private final StatisticsRollupRepository rollupRepository;
+    private final StatisticsSketchRepository sketchRepository;
+    private final ClientStatisticsWriter writer;
+    private final HitWriteBehindBuffer writeBehindBuffer;
+    private final Validator validator;
 
     @Autowired
-    public StatsServiceImpl(ViewStatsRepository repository) {
+    public StatsServiceImpl(ViewStatsRepository repository, StatisticsRollupRepository rollupRepository,
+                            StatisticsSketchRepository sketchRepository, ClientStatisticsWriter writer,
+                            HitWriteBehindBuffer writeBehindBuffer, Validator validator) {
         this.repository = repository;
+        this.rollupRepository = rollupRepository;
+        this.sketchRepository = sketchRepository;
+        this.writer = writer;
+        this.writeBehindBuffer = writeBehindBuffer;
+        this.validator = validator;
     }
 
     @Override
     public void createRecord(EndpointHitDto newData) {
-        ClientStatistics newStatistics = new ClientStatistics();
-        newStatistics.setApp(newData.getApp());
-        newStatistics.setUri(newData.getUri());
-        newStatistics.setIp(newData.getIp());
-        newStatistics.setTimestamp(newData.getTimestamp());
-        repository.save(newStatistics);
+        if (writeBehindBuffer.isEnabled()) {
+            writeBehindBuffer.add(toEntity(newData));
+        } else {
+            writer.write(List.of(toEntity(newData)));
+        }
     }
 
     @Override
-    public List<ViewStatsDto> getStatistics(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+    public HitsBatchResultDto createRecords(List<EndpointHitDto> newData) {
+        List<ClientStatistics> accepted = new ArrayList<>(newData.size());
+        for (EndpointHitDto hit : newData) {
+            if (hit != null && validator.validate(hit).isEmpty()) {
+                accepted.add(toEntity(hit));
+            }
+        }
+        writer.write(accepted);
+        return new HitsBatchResultDto(accepted.size(), newData.size() - accepted.size());
+    }
+
+    @Override
+    public List<ViewStatsDto> getStatistics(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                            boolean unique, boolean exact) {
 
         List<ViewStatsDto> stats;
         if (unique) {
+            stats = exact ? countUniqueExactly(start, end, uris) : getUniqueFromSketches(start, end, uris);
+        } else {
+            stats = getHitsFromRollups(start, end, uris);
+        }
+
+        return stats;
+    }
+
+    private List<ViewStatsDto> countUniqueExactly(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        if (uris.isEmpty())
+            return repository.findAllUniqueStatistics(start, end);
+        else
+            return repository.findUniqueStatistics(start, end, uris);
+    }
+
+    /**
+     * Оценка уникальных ip за [start, end] по скетчам {@link HyperLogLog}: почасовые скетчи целых часов
+     * сливаются, ip из неполных часов по краям добавляются из сырой таблицы.
+     * Относительная ошибка каждой оценки около 1.6% (не больше 5% с вероятностью 99.7%),
+     * при десятках уникальных ip оценка практически точна. Интервал короче целого часа считается точно.
+     */
+    private List<ViewStatsDto> getUniqueFromSketches(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        LocalDateTime to = end.plus(1, ChronoUnit.MICROS);
+        LocalDateTime hourFrom = ceil(start, ChronoUnit.HOURS);
+        LocalDateTime hourTo = to.truncatedTo(ChronoUnit.HOURS);
+        if (!hourFrom.isBefore(hourTo)) {
+            return countUniqueExactly(start, end, uris);
+        }
+
+        Map<List<String>, HyperLogLog> sketches = sketchRepository.mergeSketches(hourFrom, hourTo, uris);
+        sketchRepository.offerRawIps(sketches, start, hourFrom, uris);
+        sketchRepository.offerRawIps(sketches, hourTo, to, uris);
+        return sortByHits(sketches.entrySet().stream()
+                .map(entry -> new ViewStatsDto(entry.getKey().get(0), entry.getKey().get(1),
+                        entry.getValue().estimate()))
+                .collect(Collectors.toList()));
+    }
 
-            if (uris.isEmpty())
-                stats = repository.findAllUniqueStatistics(start, end);
-            else
-                stats = repository.findUniqueStatistics(start, end, uris);
+    /**
+     * Неуникальные обращения за [start, end]: выровненные по часам и минутам части интервала считаются
+     * по агрегатам, сырая таблица сканируется только на неполных минутах по краям.
+     * Все части интервала полуоткрытые и не пересекаются, поэтому их суммы совпадают с запросом по сырым данным.
+     */
+    private List<ViewStatsDto> getHitsFromRollups(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        // Время хранится с точностью до микросекунд, так что [start, end] == [start, end + 1мкс)
+        LocalDateTime to = end.plus(1, ChronoUnit.MICROS);
+        LocalDateTime minuteFrom = ceil(start, ChronoUnit.MINUTES);
+        LocalDateTime minuteTo = to.truncatedTo(ChronoUnit.MINUTES);
+        if (!minuteFrom.isBefore(minuteTo)) {
+            return sortByHits(sumByUri(countRawHits(start, to, uris)));
+        }
+
+        List<ViewStatsDto> parts = new ArrayList<>(countRawHits(start, minuteFrom, uris));
+        parts.addAll(countRawHits(minuteTo, to, uris));
+
+        LocalDateTime hourFrom = ceil(start, ChronoUnit.HOURS);
+        LocalDateTime hourTo = to.truncatedTo(ChronoUnit.HOURS);
+        if (hourFrom.isBefore(hourTo)) {
+            parts.addAll(sumRollups(Granularity.MINUTE, minuteFrom, hourFrom, uris));
+            parts.addAll(sumRollups(Granularity.HOUR, hourFrom, hourTo, uris));
+            parts.addAll(sumRollups(Granularity.MINUTE, hourTo, minuteTo, uris));
         } else {
+            parts.addAll(sumRollups(Granularity.MINUTE, minuteFrom, minuteTo, uris));
+        }
+        return sortByHits(sumByUri(parts));
+    }
 
-            if (uris.isEmpty())
-                stats = repository.findAllStatistics(start, end);
-            else
-                stats = repository.findStatistics(start, end, uris);
+    private List<ViewStatsDto> countRawHits(LocalDateTime from, LocalDateTime to, List<String> uris) {
+        if (!from.isBefore(to)) {
+            return List.of();
         }
+        return uris.isEmpty() ? repository.countAllHitsInRange(from, to) : repository.countHitsInRange(from, to, uris);
+    }
 
-        return stats;
+    private List<ViewStatsDto> sumRollups(Granularity granularity, LocalDateTime from, LocalDateTime to,
+                                          List<String> uris) {
+        if (!from.isBefore(to)) {
+            return List.of();
+        }
+        return rollupRepository.sumHits(granularity, from, to, uris);
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime truncated = time.truncatedTo(unit);
+        return truncated.equals(time) ? time : truncated.plus(1, unit);
+    }
+
+    private static Collection<ViewStatsDto> sumByUri(List<ViewStatsDto> parts) {
+        Map<List<String>, ViewStatsDto> total = new LinkedHashMap<>();
+        for (ViewStatsDto part : parts) {
+            total.merge(Arrays.asList(part.getApp(), part.getUri()),
+                    new ViewStatsDto(part.getApp(), part.getUri(), part.getHits()),
+                    (sum, next) -> {
+                        sum.setHits(sum.getHits() + next.getHits());
+                        return sum;
+                    });
+        }
+        return total.values();
+    }
+
+    private static List<ViewStatsDto> sortByHits(Collection<ViewStatsDto> stats) {
+        return stats.stream()
+                .sorted(Comparator.comparingLong(ViewStatsDto::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    private ClientStatistics toEntity(EndpointHitDto hit) {
+        ClientStatistics newStatistics = new ClientStatistics();
+        newStatistics.setApp(hit.getApp());
+        newStatistics.setUri(hit.getUri());
+        newStatistics.setIp(hit.getIp());
+        newStatistics.setTimestamp(hit.getTimestamp());
+        return newStatistics;
     }
 }
@@ -9,12 +9,18 @@ import ru.practicum.dto.statistics.ViewStatsDto;
 import java.time.LocalDateTime;
 import java.util.List;
 
+/**
+ * Запросы по сырой статистике. Записи без app или uri не учитываются, как и в агрегатах
+ * {@link StatisticsRollupRepository} и скетчах {@link StatisticsSketchRepository},
+ * поэтому ответ не зависит от того, по каким данным он посчитан.
+ */
 @Repository
 public interface ViewStatsRepository extends JpaRepository<ClientStatistics, Long> {
 
     @Query("SELECT new ru.practicum.dto.statistics.ViewStatsDto(v.app, v.uri, COUNT(v)) " +
             "FROM ClientStatistics v " +
             "WHERE v.timestamp BETWEEN :start AND :end " +
+            "AND v.app IS NOT NULL AND v.uri IS NOT NULL " +
             "AND  v.uri IN :uris " +
             "GROUP BY v.uri, v.app " +
             "ORDER BY COUNT(v) DESC")
@@ -25,6 +31,7 @@ public interface ViewStatsRepository extends JpaRepository<ClientStatistics, Lon
     @Query("SELECT new ru.practicum.dto.statistics.ViewStatsDto(v.app, v.uri, COUNT(v)) " +
             "FROM ClientStatistics v " +
             "WHERE v.timestamp BETWEEN :start AND :end " +
+            "AND v.app IS NOT NULL AND v.uri IS NOT NULL " +
             "GROUP BY v.uri, v.app " +
             "ORDER BY COUNT(v) DESC")
     List<ViewStatsDto> findAllStatistics(@Param("start") LocalDateTime start,
@@ -33,6 +40,7 @@ public interface ViewStatsRepository extends JpaRepository<ClientStatistics, Lon
     @Query("SELECT new ru.practicum.dto.statistics.ViewStatsDto(v.app, v.uri, COUNT(DISTINCT v.ip)) " +
             "FROM ClientStatistics v " +
             "WHERE v.timestamp BETWEEN :start AND :end " +
+            "AND v.app IS NOT NULL AND v.uri IS NOT NULL " +
             "AND  v.uri IN :uris " +
             "GROUP BY v.uri, v.app " +
             "ORDER BY COUNT(DISTINCT v.ip) DESC")
@@ -43,8 +51,27 @@ public interface ViewStatsRepository extends JpaRepository<ClientStatistics, Lon
     @Query("SELECT new ru.practicum.dto.statistics.ViewStatsDto(v.app, v.uri, COUNT(DISTINCT v.ip)) " +
             "FROM ClientStatistics v " +
             "WHERE v.timestamp BETWEEN :start AND :end " +
+            "AND v.app IS NOT NULL AND v.uri IS NOT NULL " +
             "GROUP BY v.uri, v.app " +
             "ORDER BY COUNT(DISTINCT v.ip) DESC")
     List<ViewStatsDto> findAllUniqueStatistics(@Param("start") LocalDateTime start,
                                                @Param("end") LocalDateTime end);
+
+    @Query("SELECT new ru.practicum.dto.statistics.ViewStatsDto(v.app, v.uri, COUNT(v)) " +
+            "FROM ClientStatistics v " +
+            "WHERE v.timestamp >= :from AND v.timestamp < :to " +
+            "AND v.app IS NOT NULL AND v.uri IS NOT NULL " +
+            "AND  v.uri IN :uris " +
+            "GROUP BY v.uri, v.app")
+    List<ViewStatsDto> countHitsInRange(@Param("from") LocalDateTime from,
+                                        @Param("to") LocalDateTime to,
+                                        @Param("uris") List<String> uris);
+
+    @Query("SELECT new ru.practicum.dto.statistics.ViewStatsDto(v.app, v.uri, COUNT(v)) " +
+            "FROM ClientStatistics v " +
+            "WHERE v.timestamp >= :from AND v.timestamp < :to " +
+            "AND v.app IS NOT NULL AND v.uri IS NOT NULL " +
+            "GROUP BY v.uri, v.app")
+    List<ViewStatsDto> countAllHitsInRange(@Param("from") LocalDateTime from,
+                                           @Param("to") LocalDateTime to);
 }
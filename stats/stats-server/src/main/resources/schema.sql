@@ -5,4 +5,64 @@ CREATE TABLE IF NOT EXISTS Statistics
     uri       VARCHAR(255),
     ip        VARCHAR(255),
     timestamp TIMESTAMP
-);
\ No newline at end of file
+);
+
+CREATE INDEX IF NOT EXISTS idx_statistics_timestamp ON Statistics (timestamp);
+CREATE INDEX IF NOT EXISTS idx_statistics_uri_timestamp ON Statistics (uri, timestamp);
+
+CREATE TABLE IF NOT EXISTS statistics_minute
+(
+    app    VARCHAR(255) NOT NULL,
+    uri    VARCHAR(255) NOT NULL,
+    bucket TIMESTAMP    NOT NULL,
+    hits   BIGINT       NOT NULL,
+    CONSTRAINT pk_statistics_minute PRIMARY KEY (app, uri, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS idx_statistics_minute_bucket ON statistics_minute (bucket);
+
+CREATE TABLE IF NOT EXISTS statistics_hour
+(
+    app    VARCHAR(255) NOT NULL,
+    uri    VARCHAR(255) NOT NULL,
+    bucket TIMESTAMP    NOT NULL,
+    hits   BIGINT       NOT NULL,
+    CONSTRAINT pk_statistics_hour PRIMARY KEY (app, uri, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS idx_statistics_hour_bucket ON statistics_hour (bucket);
+
+-- Первичное заполнение агрегатов по уже накопленной статистике, выполняется только пока таблицы агрегатов пусты
+INSERT INTO statistics_minute (app, uri, bucket, hits)
+SELECT s.app, s.uri, DATE_TRUNC('MINUTE', s.timestamp), COUNT(*)
+FROM Statistics s
+WHERE s.timestamp IS NOT NULL
+  AND s.app IS NOT NULL
+  AND s.uri IS NOT NULL
+  AND NOT EXISTS (SELECT 1 FROM statistics_minute)
+GROUP BY s.app, s.uri, DATE_TRUNC('MINUTE', s.timestamp);
+
+INSERT INTO statistics_hour (app, uri, bucket, hits)
+SELECT s.app, s.uri, DATE_TRUNC('HOUR', s.timestamp), COUNT(*)
+FROM Statistics s
+WHERE s.timestamp IS NOT NULL
+  AND s.app IS NOT NULL
+  AND s.uri IS NOT NULL
+  AND NOT EXISTS (SELECT 1 FROM statistics_hour)
+GROUP BY s.app, s.uri, DATE_TRUNC('HOUR', s.timestamp);
+
+-- Почасовые скетчи HyperLogLog уникальных ip, заполняются приложением (см. StatisticsSketchRepository).
+-- У одного часа может быть несколько строк, они сливаются при чтении и сворачиваются в фоне
+CREATE TABLE IF NOT EXISTS statistics_hll
+(
+    id     BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    app    VARCHAR(255) NOT NULL,
+    uri    VARCHAR(255) NOT NULL,
+    bucket TIMESTAMP    NOT NULL,
+    sketch BYTEA        NOT NULL,
+    CONSTRAINT pk_statistics_hll PRIMARY KEY (id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_statistics_hll_key ON statistics_hll (app, uri, bucket);
+
+CREATE INDEX IF NOT EXISTS idx_statistics_hll_bucket ON statistics_hll (bucket);
@@ -0,0 +1,82 @@
+package ru.practicum;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+
+public class HitWriteBehindBufferTest {
+
+    private ClientStatisticsWriter writer;
+    private List<Integer> writtenBatches;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        writer = Mockito.mock(ClientStatisticsWriter.class);
+        writtenBatches = new CopyOnWriteArrayList<>();
+        Mockito.doAnswer(invocation -> {
+            List<?> batch = invocation.getArgument(0);
+            writtenBatches.add(batch.size());
+            return null;
+        }).when(writer).write(anyList());
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    public void testFlushBySizeAndAge() throws Exception {
+        HitWriteBehindBuffer buffer = createBuffer(100, Duration.ofMillis(100));
+        buffer.start();
+
+        for (int i = 0; i < 4; i++) {
+            buffer.add(hit(i));
+        }
+
+        Mockito.verify(writer, Mockito.timeout(2000).times(2)).write(anyList());
+        assertEquals(List.of(3, 1), writtenBatches);
+        assertEquals(0.0, meterRegistry.get("stats.write.behind.queue.depth").gauge().value());
+        assertTrue(meterRegistry.get("stats.write.behind.flush").timer().count() >= 2);
+        buffer.stop();
+    }
+
+    @Test
+    public void testDrainOnShutdown() throws Exception {
+        HitWriteBehindBuffer buffer = createBuffer(100, Duration.ofSeconds(30));
+        buffer.start();
+
+        for (int i = 0; i < 7; i++) {
+            buffer.add(hit(i));
+        }
+        buffer.stop();
+
+        assertEquals(7, writtenBatches.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    public void testOverflowIsWrittenSynchronously() throws Exception {
+        HitWriteBehindBuffer buffer = createBuffer(1, Duration.ofSeconds(30));
+
+        buffer.add(hit(1));
+        buffer.add(hit(2));
+
+        assertEquals(List.of(1), writtenBatches);
+        assertEquals(1.0, meterRegistry.get("stats.write.behind.overflow").counter().count());
+    }
+
+    private HitWriteBehindBuffer createBuffer(int capacity, Duration flushInterval) {
+        return new HitWriteBehindBuffer(writer, meterRegistry, true, 3, capacity, flushInterval);
+    }
+
+    private ClientStatistics hit(int i) {
+        return new ClientStatistics(null, "app", "/uri/" + i, "127.0.0.1", LocalDateTime.now());
+    }
+}
@@ -0,0 +1,56 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HyperLogLogTest {
+
+    @Test
+    public void testSmallCardinalityIsExact() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 100; i++) {
+            sketch.offer("192.168.0." + i % 20);
+        }
+
+        assertEquals(20, sketch.estimate());
+    }
+
+    @Test
+    public void testSerializationRoundTrip() {
+        HyperLogLog sparse = new HyperLogLog();
+        HyperLogLog dense = new HyperLogLog();
+        for (int i = 0; i < 100_000; i++) {
+            dense.offer("10.0." + i / 256 + "." + i % 256);
+            if (i < 10) {
+                sparse.offer("10.0.0." + i);
+            }
+        }
+
+        byte[] sparseBytes = sparse.toBytes();
+        assertTrue(sparseBytes.length < 64);
+        assertEquals(sparse.estimate(), HyperLogLog.fromBytes(sparseBytes).estimate());
+        assertEquals(dense.estimate(), HyperLogLog.fromBytes(dense.toBytes()).estimate());
+    }
+
+    @Test
+    public void testMergeIsUnionAndIdempotent() {
+        HyperLogLog left = new HyperLogLog();
+        HyperLogLog right = new HyperLogLog();
+        for (int i = 0; i < 60_000; i++) {
+            String ip = "10.1." + i / 256 + "." + i % 256;
+            if (i < 40_000) {
+                left.offer(ip);
+            }
+            if (i >= 20_000) {
+                right.offer(ip);
+            }
+        }
+
+        assertTrue(left.merge(right));
+        assertFalse(left.merge(right));
+        assertTrue(Math.abs(left.estimate() - 60_000) <= 60_000 * 0.05);
+    }
+}
@@ -60,4 +60,74 @@ public class StatsControllerIT {
                 .andExpect(jsonPath("$[0].uri").value("/test"))
                 .andExpect(jsonPath("$[0].hits").value(2));
     }
+
+    @Test
+    public void testCreateRecordsBatch() throws Exception {
+        String jsonRequest = "[" +
+                "{ \"app\": \"testApp\", \"uri\": \"/batch\", \"ip\": \"192.168.1.1\", \"timestamp\": \"2023-03-01 10:00:00\" }," +
+                "{ \"app\": \"testApp\", \"uri\": \"/batch\", \"ip\": \"192.168.1.2\", \"timestamp\": \"2023-03-01 11:00:00\" }," +
+                "{ \"app\": \"testApp\", \"uri\": \"/batch\", \"ip\": \"999.999.999.999\", \"timestamp\": \"2023-03-01 12:00:00\" }" +
+                "]";
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/hits")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonRequest))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(1));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/stats")
+                        .param("start", "2023-03-01 00:00:00")
+                        .param("end", "2023-03-01 23:59:59")
+                        .param("uris", "/batch"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].uri").value("/batch"))
+                .andExpect(jsonPath("$[0].hits").value(2));
+    }
+
+    @Test
+    public void testCreateRecordsStream() throws Exception {
+        String ndjsonRequest =
+                "{ \"app\": \"testApp\", \"uri\": \"/stream\", \"ip\": \"192.168.1.1\", \"timestamp\": \"2023-04-01 10:00:00\" }\n" +
+                "not a json\n" +
+                "\n" +
+                "{ \"app\": \"testApp\", \"uri\": \"/stream\", \"ip\": \"192.168.1.1\", \"timestamp\": \"2023-04-01 11:00:00\" }\n";
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/hits")
+                        .contentType("application/x-ndjson")
+                        .content(ndjsonRequest))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(1));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/stats")
+                        .param("start", "2023-04-01 00:00:00")
+                        .param("end", "2023-04-01 23:59:59")
+                        .param("uris", "/stream"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].hits").value(2));
+    }
+
+    @Test
+    public void testQueryStatistics() throws Exception {
+        String jsonRequest = "[" +
+                "{ \"app\": \"testApp\", \"uri\": \"/events/1\", \"ip\": \"192.168.1.1\", \"timestamp\": \"2023-05-01 10:00:00\" }," +
+                "{ \"app\": \"testApp\", \"uri\": \"/events/1\", \"ip\": \"192.168.1.1\", \"timestamp\": \"2023-05-01 11:00:00\" }," +
+                "{ \"app\": \"testApp\", \"uri\": \"/events/2\", \"ip\": \"192.168.1.2\", \"timestamp\": \"2023-05-01 12:00:00\" }" +
+                "]";
+        mockMvc.perform(MockMvcRequestBuilders.post("/hits")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonRequest))
+                .andExpect(status().isCreated());
+
+        String query = "{ \"start\": \"2023-05-01 00:00:00\", \"end\": \"2023-05-01 23:59:59\", " +
+                "\"uris\": [\"/events/1\", \"/events/2\", \"/events/3\"], \"unique\": true }";
+        mockMvc.perform(MockMvcRequestBuilders.post("/stats/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(query))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[?(@.uri == '/events/1')].hits").value(1))
+                .andExpect(jsonPath("$[?(@.uri == '/events/2')].hits").value(1));
+    }
 }
@@ -34,6 +34,7 @@ public class StatsControllerValidationTest {
                 any(LocalDateTime.class),
                 any(LocalDateTime.class),
                 any(List.class),
+                any(boolean.class),
                 any(boolean.class)
         )).thenReturn(Collections.emptyList());
     }
@@ -120,4 +121,22 @@ public class StatsControllerValidationTest {
                         .param("end", end))
                 .andExpect(status().isBadRequest());
     }
+
+    @Test
+    public void testQueryWithoutStart() throws Exception {
+        String query = "{ \"end\": \"2023-01-01 10:00:00\", \"uris\": [\"/events/1\"] }";
+        mockMvc.perform(MockMvcRequestBuilders.post("/stats/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(query))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testQueryInvalidDateSequence() throws Exception {
+        String query = "{ \"start\": \"2023-01-02 10:00:00\", \"end\": \"2023-01-01 10:00:00\" }";
+        mockMvc.perform(MockMvcRequestBuilders.post("/stats/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(query))
+                .andExpect(status().isBadRequest());
+    }
 }
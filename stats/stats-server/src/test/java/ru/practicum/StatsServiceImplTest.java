@@ -0,0 +1,180 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.dto.statistics.EndpointHitDto;
+import ru.practicum.dto.statistics.ViewStatsDto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@Transactional
+public class StatsServiceImplTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2022, 5, 10, 9, 0, 0);
+    private static final List<String> URIS = List.of("/events", "/events/1", "/events/2");
+
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private ViewStatsRepository viewStatsRepository;
+
+    @Autowired
+    private StatisticsSketchCompactor sketchCompactor;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Random random;
+
+    @BeforeEach
+    public void setUp() {
+        random = new Random(42);
+        List<EndpointHitDto> hits = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            hits.add(new EndpointHitDto("ewm-service", URIS.get(random.nextInt(URIS.size())),
+                    "10.0.0." + random.nextInt(50), BASE.plusSeconds(random.nextInt(5 * 3600))));
+        }
+        // Попадания точно на границы минут и часов
+        hits.add(new EndpointHitDto("ewm-service", "/events", "10.0.1.1", BASE.plusHours(1)));
+        hits.add(new EndpointHitDto("ewm-service", "/events", "10.0.1.2", BASE.plusHours(2).minusSeconds(1)));
+        hits.add(new EndpointHitDto("ewm-service", "/events/1", "10.0.1.3", BASE.plusMinutes(61)));
+        statsService.createRecords(hits);
+    }
+
+    @Test
+    public void testRollupsMatchRawStatistics() {
+        List<LocalDateTime[]> ranges = new ArrayList<>();
+        ranges.add(new LocalDateTime[]{BASE, BASE.plusHours(5)});
+        ranges.add(new LocalDateTime[]{BASE.plusHours(1), BASE.plusHours(2).minusSeconds(1)});
+        ranges.add(new LocalDateTime[]{BASE.plusMinutes(61), BASE.plusMinutes(61)});
+        ranges.add(new LocalDateTime[]{BASE.plusMinutes(5).plusSeconds(30), BASE.plusMinutes(7).plusSeconds(10)});
+        ranges.add(new LocalDateTime[]{BASE.plusSeconds(10), BASE.plusSeconds(40)});
+        for (int i = 0; i < 30; i++) {
+            LocalDateTime start = BASE.plusSeconds(random.nextInt(5 * 3600));
+            ranges.add(new LocalDateTime[]{start, start.plusSeconds(random.nextInt(3 * 3600))});
+        }
+
+        for (LocalDateTime[] range : ranges) {
+            assertEquals(toMap(viewStatsRepository.findStatistics(range[0], range[1], URIS)),
+                    toMap(statsService.getStatistics(range[0], range[1], URIS, false, false)),
+                    "Range " + range[0] + " - " + range[1]);
+            assertEquals(toMap(viewStatsRepository.findStatistics(range[0], range[1], List.of("/events/1"))),
+                    toMap(statsService.getStatistics(range[0], range[1], List.of("/events/1"), false, false)),
+                    "Range " + range[0] + " - " + range[1]);
+        }
+    }
+
+    @Test
+    public void testHitsWithoutAppOrUriAreIgnoredOnEveryPath() {
+        statsService.createRecord(new EndpointHitDto(null, "/events", "10.0.2.1", BASE.plusSeconds(30)));
+        statsService.createRecord(new EndpointHitDto(null, "/events", "10.0.2.2", BASE.plusHours(1).plusMinutes(5)));
+        statsService.createRecord(new EndpointHitDto("ewm-service", null, "10.0.2.3", BASE.plusHours(2)));
+
+        LocalDateTime start = BASE.plusSeconds(10);
+        LocalDateTime end = BASE.plusHours(3).plusSeconds(20);
+        assertEquals(toMap(viewStatsRepository.findAllStatistics(start, end)),
+                toMap(statsService.getStatistics(start, end, List.of(), false, false)));
+        assertEquals(toMap(viewStatsRepository.findAllUniqueStatistics(start, end)),
+                toMap(statsService.getStatistics(start, end, List.of(), true, false)));
+        assertEquals(URIS.size(), statsService.getStatistics(start, end, List.of(), false, false).size());
+    }
+
+    @Test
+    public void testSketchCompactionKeepsEstimates() {
+        List<EndpointHitDto> hits = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            hits.add(new EndpointHitDto("ewm-service", URIS.get(i % URIS.size()),
+                    "10.0.3." + i % 80, BASE.plusSeconds(random.nextInt(5 * 3600))));
+        }
+        statsService.createRecords(hits);
+        LocalDateTime end = BASE.plusHours(5).minusSeconds(1);
+        Map<String, Long> before = toMap(statsService.getStatistics(BASE, end, URIS, true, false));
+        assertTrue(maxSketchRowsPerHour() > 1);
+
+        assertTrue(sketchCompactor.compact() > 0);
+
+        assertEquals(1, maxSketchRowsPerHour());
+        assertEquals(before, toMap(statsService.getStatistics(BASE, end, URIS, true, false)));
+    }
+
+    @Test
+    public void testRollupsAreSortedByHits() {
+        List<ViewStatsDto> stats = statsService.getStatistics(BASE, BASE.plusHours(5), URIS, false, false);
+
+        assertEquals(URIS.size(), stats.size());
+        for (int i = 1; i < stats.size(); i++) {
+            assertTrue(stats.get(i - 1).getHits() >= stats.get(i).getHits());
+        }
+    }
+
+    @Test
+    public void testUniqueSketchesAreExactForSmallCardinalities() {
+        LocalDateTime[][] ranges = {
+                {BASE, BASE.plusHours(5)},
+                {BASE.plusMinutes(10), BASE.plusHours(3).plusMinutes(7)},
+                {BASE.plusMinutes(5), BASE.plusMinutes(40)}
+        };
+        for (LocalDateTime[] range : ranges) {
+            assertEquals(toMap(viewStatsRepository.findUniqueStatistics(range[0], range[1], URIS)),
+                    toMap(statsService.getStatistics(range[0], range[1], URIS, true, false)),
+                    "Range " + range[0] + " - " + range[1]);
+            assertEquals(toMap(viewStatsRepository.findAllUniqueStatistics(range[0], range[1])),
+                    toMap(statsService.getStatistics(range[0], range[1], List.of(), true, true)),
+                    "Range " + range[0] + " - " + range[1]);
+        }
+    }
+
+    @Test
+    public void testUniqueSketchesWithinErrorBound() {
+        LocalDateTime base = LocalDateTime.of(2022, 6, 1, 0, 0, 0);
+        Random random = new Random(7);
+        List<EndpointHitDto> hits = new ArrayList<>();
+        for (int i = 0; i < 30000; i++) {
+            int ip = random.nextInt(20000);
+            hits.add(new EndpointHitDto("ewm-service", URIS.get(random.nextInt(URIS.size())),
+                    "10.1." + ip / 256 + "." + ip % 256, base.plusSeconds(random.nextInt(6 * 3600))));
+        }
+        statsService.createRecords(hits);
+
+        List<LocalDateTime[]> ranges = List.of(
+                new LocalDateTime[]{base, base.plusHours(6)},
+                new LocalDateTime[]{base.plusMinutes(10), base.plusHours(5).plusMinutes(20)},
+                new LocalDateTime[]{base.plusHours(1), base.plusHours(3)},
+                new LocalDateTime[]{base.plusMinutes(30).plusSeconds(5), base.plusHours(2)});
+        for (LocalDateTime[] range : ranges) {
+            Map<String, Long> exact = toMap(statsService.getStatistics(range[0], range[1], URIS, true, true));
+            Map<String, Long> estimated = toMap(statsService.getStatistics(range[0], range[1], URIS, true, false));
+
+            assertEquals(exact.keySet(), estimated.keySet());
+            // Стандартная ошибка скетча 1.6%, 5% — это три стандартных отклонения
+            for (String uri : exact.keySet()) {
+                double error = Math.abs(estimated.get(uri) - exact.get(uri)) / (double) exact.get(uri);
+                assertTrue(error <= 0.05, "Range " + range[0] + " - " + range[1] + ", uri " + uri +
+                        ": exact " + exact.get(uri) + ", estimated " + estimated.get(uri));
+            }
+        }
+    }
+
+    private Map<String, Long> toMap(List<ViewStatsDto> stats) {
+        return stats.stream().collect(Collectors.toMap(ViewStatsDto::getUri, ViewStatsDto::getHits));
+    }
+
+    private int maxSketchRowsPerHour() {
+        return jdbcTemplate.queryForObject("SELECT MAX(parts) FROM (SELECT COUNT(*) AS parts FROM statistics_hll " +
+                "GROUP BY app, uri, bucket) t", Integer.class);
+    }
+}